@@ -0,0 +1,21 @@
+package com.shaubert.ui.adapters;
+
+import java.util.List;
+
+/**
+ * Section indexer that can compute sections on a background thread.
+ */
+public interface AsyncSectionIndexer<T> extends ExtendedSectionIndexer {
+
+    /**
+     * Computes sections for items that are going to be shown without changing indexer state.
+     * Can be called from any thread.
+     */
+    Object computeSections(List<T> items);
+
+    /**
+     * Replaces sections with result of {@link #computeSections(List)}.
+     */
+    void applySections(Object sections);
+
+}
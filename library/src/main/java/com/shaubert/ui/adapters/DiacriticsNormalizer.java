@@ -0,0 +1,27 @@
+package com.shaubert.ui.adapters;
+
+import java.text.Normalizer;
+
+/**
+ * Removes accents and other combining marks, so accented words are also found by words without accents.
+ */
+public class DiacriticsNormalizer implements ItemsFilter.Normalizer {
+
+    @Override
+    public String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = null;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                if (result == null) {
+                    result = new StringBuilder(decomposed.length());
+                    result.append(decomposed, 0, i);
+                }
+            } else if (result != null) {
+                result.append(c);
+            }
+        }
+        return result != null ? result.toString() : null;
+    }
+}
@@ -0,0 +1,110 @@
+package com.shaubert.ui.adapters;
+
+import com.shaubert.ui.adapters.common.FilteredList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stack of previous filter results for the same items. When query narrows only current matches
+ * are filtered, when it widens back the saved result is restored without filtering.
+ */
+class FilterHistory {
+
+    static final int MAX_SIZE = 8;
+
+    static class Result {
+        final ItemsFilter.Query query;
+        final int[] sourceIndices;
+
+        Result(ItemsFilter.Query query, int[] sourceIndices) {
+            this.query = query;
+            this.sourceIndices = sourceIndices;
+        }
+    }
+
+    static class Plan {
+        /**
+         * Result to show as is.
+         */
+        Result restored;
+        /**
+         * Ascending source indices that should be filtered, null if all items should be filtered.
+         */
+        int[] base;
+
+        private int keptCount;
+        private Result pushed;
+    }
+
+    private final List<Result> results = new ArrayList<>();
+    private int itemsVersion;
+
+    /**
+     * Finds how to filter items with query without changing history.
+     *
+     * @param view current filter result, it's used only if it was filtered with viewQuery for items of itemsVersion.
+     */
+    Plan plan(ItemsFilter.Query query, int itemsVersion,
+              ItemsFilter.Query viewQuery, int viewItemsVersion, FilteredList<?> view) {
+        Plan plan = new Plan();
+        if (query == null || query.isEmpty()) {
+            return plan;
+        }
+
+        if (viewItemsVersion == itemsVersion && viewQuery != null && !viewQuery.isEmpty()
+                && refines(query, viewQuery)) {
+            plan.base = view.toSourceIndices();
+            plan.keptCount = this.itemsVersion == itemsVersion ? results.size() : 0;
+            if (!refines(viewQuery, query)) {
+                plan.pushed = new Result(viewQuery, plan.base);
+            }
+            return plan;
+        }
+
+        if (this.itemsVersion == itemsVersion) {
+            for (int i = results.size() - 1; i >= 0; i--) {
+                Result result = results.get(i);
+                if (refines(query, result.query)) {
+                    if (refines(result.query, query)) {
+                        plan.restored = result;
+                        plan.keptCount = i;
+                    } else {
+                        plan.base = result.sourceIndices;
+                        plan.keptCount = i + 1;
+                    }
+                    return plan;
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Updates history after result of plan is shown.
+     */
+    void apply(Plan plan, int itemsVersion) {
+        if (this.itemsVersion != itemsVersion) {
+            results.clear();
+            this.itemsVersion = itemsVersion;
+        }
+        while (results.size() > plan.keptCount) {
+            results.remove(results.size() - 1);
+        }
+        if (plan.pushed != null) {
+            results.add(plan.pushed);
+            if (results.size() > MAX_SIZE) {
+                results.remove(0);
+            }
+        }
+    }
+
+    void clear() {
+        results.clear();
+    }
+
+    private static boolean refines(ItemsFilter.Query query, ItemsFilter.Query previous) {
+        return query instanceof ItemsFilter.RefinableQuery
+                && ((ItemsFilter.RefinableQuery) query).refines(previous);
+    }
+}
@@ -12,6 +12,7 @@ public class FilteredAdapter extends AdapterWrapper {
 
     private ItemsFilter filter;
     private List<Object> filteredItems = new ArrayList<Object>();
+    private QueryScheduler queryScheduler;
 
     public FilteredAdapter(ListAdapter wrapped, ItemsFilter filter) {
         super(wrapped);
@@ -19,20 +20,43 @@ public class FilteredAdapter extends AdapterWrapper {
         filterItems();
     }
 
+    /**
+     * Delays {@link #setFilterQuery(ItemsFilter.Query)} until no new query comes for delayMillis, so only the last
+     * of quickly typed queries is filtered. Empty query is applied at once. 0 disables the delay.
+     */
+    public void setFilterQueryDelay(long delayMillis) {
+        if (queryScheduler == null) {
+            queryScheduler = new QueryScheduler(new QueryScheduler.Callback() {
+                @Override
+                public void executeQuery(ItemsFilter.Query query) {
+                    applyFilterQuery(query);
+                }
+            });
+        }
+        queryScheduler.setDelay(delayMillis);
+    }
+
+    public long getFilterQueryDelay() {
+        return queryScheduler != null ? queryScheduler.getDelay() : 0;
+    }
+
     public void clearFilter() {
         setFilterQuery((String) null);
     }
 
     public void setFilterQuery(String query) {
-        if (query != null) {
-            filter.setQuery(new SimpleQuery(query));
+        setFilterQuery(query != null ? new SimpleQuery(query) : null);
+    }
+
+    public void setFilterQuery(ItemsFilter.Query query) {
+        if (queryScheduler != null) {
+            queryScheduler.schedule(query);
         } else {
-            filter.setQuery(null);
+            applyFilterQuery(query);
         }
-        filterItems();
     }
 
-    public void setFilterQuery(ItemsFilter.Query query) {
+    private void applyFilterQuery(ItemsFilter.Query query) {
         filter.setQuery(query);
         filterItems();
     }
@@ -0,0 +1,205 @@
+package com.shaubert.ui.adapters;
+
+import android.text.TextUtils;
+import com.shaubert.ui.adapters.common.TokenArena;
+import com.shaubert.ui.adapters.common.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query that ranks items by how well their tokens match query words. Exact tokens are ranked first, then
+ * prefixes of first token, prefixes of other tokens, substrings and prefixes with typos. Words of 4 and more
+ * characters may have one typo, words of 8 and more characters may have two.
+ */
+public class FuzzyQuery implements ItemsFilter.RankedQuery, ItemsFilter.SpansQuery {
+
+    public static final int SCORE_EXACT = 100;
+    public static final int SCORE_PREFIX = 80;
+    public static final int SCORE_WORD_START = 60;
+    public static final int SCORE_SUBSTRING = 40;
+    public static final int SCORE_ONE_TYPO = 20;
+    public static final int SCORE_TWO_TYPOS = 10;
+
+    private String query;
+    private String[] queryWords;
+    private int maxWordLength;
+
+    public FuzzyQuery(String query) {
+        this.query = query;
+        List<String> words = new ArrayList<>();
+        if (query != null) {
+            for (String word : Tokenizer.split(query)) {
+                if (word.length() > 0) {
+                    words.add(word);
+                    maxWordLength = Math.max(maxWordLength, word.length());
+                }
+            }
+        }
+        queryWords = words.toArray(new String[words.size()]);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return TextUtils.isEmpty(query);
+    }
+
+    @Override
+    public boolean match(String[] splittedName) {
+        if (isEmpty()) {
+            return true;
+        }
+        TokenArena arena = new TokenArena();
+        TokenArena.Tokens tokens = new TokenArena.Tokens();
+        arena.put(splittedName, splittedName != null ? TextUtils.join(" ", splittedName) : null, tokens);
+        return score(tokens) > 0;
+    }
+
+    @Override
+    public boolean match(TokenArena.Tokens tokens) {
+        return isEmpty() || score(tokens) > 0;
+    }
+
+    @Override
+    public int score(TokenArena.Tokens tokens) {
+        if (tokens.size() == 0) {
+            return 0;
+        }
+        if (queryWords.length == 0) {
+            return 1;
+        }
+
+        int[][] rows = new int[3][maxWordLength + 1];
+        int result = 0;
+        for (String word : queryWords) {
+            int best = 0;
+            for (int token = 0; token < tokens.size() && best < SCORE_EXACT; token++) {
+                best = Math.max(best, score(tokens, token, word, rows));
+            }
+            if (best == 0) {
+                return 0;
+            }
+            result += best;
+        }
+        return result;
+    }
+
+    /**
+     * Spans of typos cover the beginning of token.
+     */
+    @Override
+    public int[] findSpans(TokenArena.Tokens tokens) {
+        if (tokens.size() == 0) {
+            return null;
+        }
+
+        int[][] rows = new int[3][maxWordLength + 1];
+        int[] spans = new int[queryWords.length * 3];
+        for (int i = 0; i < queryWords.length; i++) {
+            String word = queryWords[i];
+            int best = 0;
+            int bestToken = -1;
+            for (int token = 0; token < tokens.size() && best < SCORE_EXACT; token++) {
+                int score = score(tokens, token, word, rows);
+                if (score > best) {
+                    best = score;
+                    bestToken = token;
+                }
+            }
+            if (best == 0) {
+                return null;
+            }
+            spans[i * 3] = bestToken;
+            if (best >= SCORE_SUBSTRING) {
+                spans[i * 3 + 1] = best == SCORE_SUBSTRING ? tokens.indexOf(bestToken, word) : 0;
+                spans[i * 3 + 2] = word.length();
+            } else {
+                spans[i * 3 + 2] = Math.min(word.length(), tokens.length(bestToken));
+            }
+        }
+        return spans;
+    }
+
+    private static int score(TokenArena.Tokens tokens, int token, String word, int[][] rows) {
+        if (tokens.startsWith(token, word)) {
+            if (tokens.length(token) == word.length()) {
+                return SCORE_EXACT;
+            }
+            return token == 0 ? SCORE_PREFIX : SCORE_WORD_START;
+        }
+        if (tokens.contains(token, word)) {
+            return SCORE_SUBSTRING;
+        }
+        int maxTypos = getMaxTypos(word);
+        if (maxTypos == 0) {
+            return 0;
+        }
+        int typos = getPrefixTypos(tokens, token, word, maxTypos, rows);
+        if (typos > maxTypos) {
+            return 0;
+        } else if (typos == 1) {
+            return SCORE_ONE_TYPO;
+        } else if (typos == 2) {
+            return SCORE_TWO_TYPOS;
+        } else {
+            return 0;
+        }
+    }
+
+    private static int getMaxTypos(String word) {
+        if (word.length() >= 8) {
+            return 2;
+        } else if (word.length() >= 4) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Finds edit distance between word and the closest prefix of token. Insertions, deletions, replacements
+     * and transpositions of adjacent characters are counted as one typo.
+     *
+     * @return number of typos or maxTypos + 1 if there are more.
+     */
+    private static int getPrefixTypos(TokenArena.Tokens tokens, int token, String word, int maxTypos,
+                                      int[][] rows) {
+        int wordLength = word.length();
+        int[] beforePrevious = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+        for (int i = 0; i <= wordLength; i++) {
+            previous[i] = i;
+        }
+
+        int result = wordLength;
+        int tokenLength = tokens.length(token);
+        char previousTokenChar = 0;
+        for (int j = 1; j <= tokenLength; j++) {
+            char tokenChar = tokens.charAt(token, j - 1);
+            current[0] = j;
+            int rowMin = j;
+            for (int i = 1; i <= wordLength; i++) {
+                char wordChar = word.charAt(i - 1);
+                int distance = Math.min(previous[i] + 1, current[i - 1] + 1);
+                distance = Math.min(distance, previous[i - 1] + (wordChar == tokenChar ? 0 : 1));
+                if (i > 1 && j > 1 && wordChar == previousTokenChar && word.charAt(i - 2) == tokenChar) {
+                    distance = Math.min(distance, beforePrevious[i - 2] + 1);
+                }
+                current[i] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            result = Math.min(result, current[wordLength]);
+            if (rowMin > maxTypos) {
+                break;
+            }
+
+            int[] row = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = row;
+            previousTokenChar = tokenChar;
+        }
+        return Math.min(result, maxTypos + 1);
+    }
+}
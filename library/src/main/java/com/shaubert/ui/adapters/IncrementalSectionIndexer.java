@@ -0,0 +1,24 @@
+package com.shaubert.ui.adapters;
+
+/**
+ * Section indexer that updates sections only around changed ranges of items.
+ * Positions are positions of items without sections. Ranges of one change are reported in order,
+ * each at positions after the previous ones are applied, then {@link #refreshChangedSections()} is called.
+ */
+public interface IncrementalSectionIndexer<T> extends ExtendedSectionIndexer {
+
+    void onItemsInserted(int position, int count);
+
+    void onItemsRemoved(int position, int count);
+
+    /**
+     * Item was changed in place, so its section should be computed again.
+     */
+    void invalidateSection(T item);
+
+    /**
+     * Recomputes sections around ranges reported since the last refresh.
+     */
+    void refreshChangedSections();
+
+}
@@ -0,0 +1,95 @@
+package com.shaubert.ui.adapters;
+
+import com.shaubert.ui.adapters.common.LongIntMap;
+import com.shaubert.ui.adapters.common.RankTree;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Maps item ids to positions in a list. Indexed items are kept in a {@link RankTree}, so a position
+ * is computed from the item's handle and insertions and removals don't rewrite other positions.
+ * Items appended after indexed ones are indexed lazily on lookup. All operations take O(log n).
+ */
+class ItemIdIndex<T> {
+
+    interface IdProvider<T> {
+        long getItemId(T item);
+    }
+
+    private final IdProvider<T> idProvider;
+    private final LongIntMap handles = new LongIntMap();
+    private final RankTree tree = new RankTree();
+
+    ItemIdIndex(IdProvider<T> idProvider) {
+        this.idProvider = idProvider;
+    }
+
+    void invalidate() {
+        handles.clear();
+        tree.clear();
+    }
+
+    void onInserted(List<T> items, int position) {
+        onInserted(items, new int[] {position});
+    }
+
+    /**
+     * Indexes inserted items that are inside indexed positions.
+     * @param sortedPositions positions of inserted items after insertion in ascending order.
+     */
+    void onInserted(List<T> items, int[] sortedPositions) {
+        for (int position : sortedPositions) {
+            if (position >= tree.size()) {
+                return;
+            }
+            handles.put(idProvider.getItemId(items.get(position)), tree.insert(position));
+        }
+    }
+
+    void onRemoved(T item, int position) {
+        if (position >= tree.size()) {
+            return;
+        }
+        long id = idProvider.getItemId(item);
+        int handle = tree.remove(position);
+        if (handles.get(id, -1) == handle) {
+            handles.remove(id);
+        }
+    }
+
+    /**
+     * @return position of item in items or -1.
+     */
+    int getPosition(List<T> items, T item) {
+        long id = idProvider.getItemId(item);
+        int handle = handles.get(id, -1);
+        if (handle < 0) {
+            reindex(items);
+            handle = handles.get(id, -1);
+            if (handle < 0) {
+                return -1;
+            }
+        }
+        int position = tree.getPosition(handle);
+        if (position >= 0 && position < items.size()) {
+            T found = items.get(position);
+            if (found == item || (found != null && found.equals(item))) {
+                return position;
+            }
+        }
+        return items.indexOf(item);
+    }
+
+    private void reindex(List<T> items) {
+        int size = items.size();
+        int position = tree.size();
+        if (position >= size) {
+            return;
+        }
+        Iterator<T> iterator = items.listIterator(position);
+        while (iterator.hasNext()) {
+            handles.put(idProvider.getItemId(iterator.next()), tree.insert(position++));
+        }
+    }
+}
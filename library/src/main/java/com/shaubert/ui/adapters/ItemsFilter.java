@@ -1,8 +1,23 @@
 package com.shaubert.ui.adapters;
 
-import java.util.HashMap;
-import java.util.Locale;
+import com.shaubert.ui.adapters.common.BackgroundExecutor;
+import com.shaubert.ui.adapters.common.Generation;
+import com.shaubert.ui.adapters.common.IntArrayList;
+import com.shaubert.ui.adapters.common.MatchesCache;
+import com.shaubert.ui.adapters.common.TokenArena;
+import com.shaubert.ui.adapters.common.TrigramIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ItemsFilter<T> {
 
@@ -11,42 +26,897 @@ public class ItemsFilter<T> {
         boolean match(String[] splittedName);
     }
 
+    /**
+     * Query that exposes its words, so items can be found with token index.
+     */
+    public interface IndexableQuery extends Query {
+        /**
+         * @return variants of lower case query words. Item matches if its tokens contain all words of any variant,
+         * so variant without words matches any item.
+         */
+        String[][] getWordVariants();
+    }
+
+    /**
+     * Query that matches tokens in place, without creating strings for them.
+     */
+    public interface TokensQuery extends Query {
+        boolean match(TokenArena.Tokens tokens);
+    }
+
+    /**
+     * Query that knows when its matches are a subset of matches of another query.
+     */
+    public interface RefinableQuery extends Query {
+        /**
+         * @return true if every item that matches this query matches previous query too.
+         */
+        boolean refines(Query previous);
+    }
+
+    /**
+     * Query that can tell which parts of item tokens it matched.
+     */
+    public interface SpansQuery extends TokensQuery {
+        /**
+         * @return triples of token index, offset in token and length, or null if item doesn't match.
+         */
+        int[] findSpans(TokenArena.Tokens tokens);
+    }
+
+    /**
+     * Query that orders matched items by relevance.
+     */
+    public interface RankedQuery extends TokensQuery {
+        /**
+         * @return positive score of matched item, bigger is better, or 0 if item doesn't match.
+         */
+        int score(TokenArena.Tokens tokens);
+    }
+
+    /**
+     * Query with equals and hashCode: equal queries match the same items, so their results can be cached.
+     */
+    public interface CacheableQuery extends Query {
+    }
+
+    /**
+     * Condition that is combined with query, like category or price range. Facets of one group are
+     * joined with OR, groups and query are joined with AND.
+     */
+    public interface Facet<T> {
+        boolean isItemMatched(T item);
+    }
+
+    /**
+     * Alternative spelling of item text, like text without diacritics or transliterated text.
+     * Tokens of every spelling are cached with item tokens, so query matches any of them.
+     */
+    public interface Normalizer {
+        /**
+         * @return other spelling of text or null if there is none.
+         */
+        String normalize(String text);
+    }
+
+    public static final int DEFAULT_MATCHES_CACHE_SIZE = 0;
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 50000;
+
+    private static final int BITS_PER_WORD = 64;
+    private static final Object NULL_ITEM = new Object();
+
     private Query query;
-    private Map<T, String[]> cache = new HashMap<T, String[]>();
+    private TokenArena cache = new TokenArena();
+    private final TokenArena.Tokens tokens = new TokenArena.Tokens();
+    private TokenArena sharedCache;
+    private int sharedCacheReaders;
+    private final ThreadLocal<ParallelMatcher> parallelMatcher = new ThreadLocal<>();
+
+    private final List<Normalizer> normalizers = new ArrayList<>();
+    private final Map<Object, int[]> matchSpans = new IdentityHashMap<>();
+    private Query matchSpansQuery;
+
+    private boolean indexEnabled;
+    private TrigramIndex index;
+    private boolean indexValid;
+    private int indexedVersion;
+
+    private final MatchesCache matchesCache = new MatchesCache(DEFAULT_MATCHES_CACHE_SIZE);
+
+    private final Map<String, List<Facet<T>>> facetGroups = new LinkedHashMap<>();
+    private final Map<Facet<T>, long[]> facetMatches = new IdentityHashMap<>();
+    private int facetMatchesVersion;
 
-    public void setQuery(Query query) {
+    private int version;
+
+    private boolean parallelEnabled;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private Executor parallelExecutor;
+
+    public synchronized void setQuery(Query query) {
         this.query = query;
     }
 
-    public Query getQuery() {
+    public synchronized Query getQuery() {
         return query;
     }
 
+    /**
+     * @return true if item matches query and facets. Called from item matcher of
+     * {@link #findMatchesInParallel(List, Query, Facet, Generation, int)} or
+     * {@link #findMatches(List, int, Query, Facet)} it matches query of that matching without locking this filter.
+     */
     public boolean isItemMatchQuery(T item) {
-        if (isQueryEmpty()) {
+        ParallelMatcher matcher = parallelMatcher.get();
+        if (matcher != null) {
+            return matcher.isItemMatched(item);
+        }
+        synchronized (this) {
+            return isItemMatch(query, item) && isItemMatchFacets(item);
+        }
+    }
+
+    /**
+     * @return true if query is not empty and ranks items.
+     */
+    public synchronized boolean isQueryRanked() {
+        return query instanceof RankedQuery && !query.isEmpty();
+    }
+
+    /**
+     * @return score of item for {@link RankedQuery}, 1 if item matches other query, or 0 if item doesn't
+     * match query or facets.
+     */
+    public synchronized int getItemScore(T item) {
+        if (!isItemMatchFacets(item)) {
+            return 0;
+        }
+        if (isQueryRanked()) {
+            return ((RankedQuery) query).score(getTokens(item));
+        }
+        return isItemMatch(query, item) ? 1 : 0;
+    }
+
+    /**
+     * Finds where current query matched item, so binders can highlight it without searching text again.
+     * Spans are computed from cached tokens once per item and query.
+     *
+     * @return triples of token index, offset in token and length. Token index counts tokens of
+     * {@link #itemToString(Object)} split by spaces, bigger indices are tokens of normalized spellings,
+     * see {@link com.shaubert.ui.adapters.common.Strings#getTokenStart(CharSequence, int)}.
+     * Empty if query can't tell spans, null if item doesn't match.
+     */
+    public synchronized int[] getMatchSpans(T item) {
+        if (matchSpansQuery != query) {
+            matchSpans.clear();
+            matchSpansQuery = query;
+        }
+        Object key = item != null ? item : NULL_ITEM;
+        int[] spans = matchSpans.get(key);
+        if (spans == null && isItemMatchQuery(item)) {
+            if (query instanceof SpansQuery && !query.isEmpty()) {
+                spans = ((SpansQuery) query).findSpans(getTokens(item));
+            }
+            if (spans == null) {
+                spans = new int[0];
+            }
+            matchSpans.put(key, spans);
+        }
+        return spans;
+    }
+
+    private boolean isItemMatch(Query query, T item) {
+        if (query == null || query.isEmpty()) {
             return true;
         } else {
-            String[] splittedName = cache.get(item);
-            if (splittedName == null) {
-                String name = itemToString(item);
-                if (name != null) {
-                    splittedName = name.toLowerCase(Locale.getDefault()).split(" ");
-                    cache.put(item, splittedName);
-                }
+            return isTokensMatch(query, getTokens(item));
+        }
+    }
+
+    private static boolean isTokensMatch(Query query, TokenArena.Tokens itemTokens) {
+        if (query instanceof TokensQuery) {
+            return ((TokensQuery) query).match(itemTokens);
+        } else {
+            return query.match(itemTokens.toArray());
+        }
+    }
+
+    private boolean isItemMatchFacets(T item) {
+        return isItemMatchFacets(facetGroups.values(), item);
+    }
+
+    private static <T> boolean isItemMatchFacets(Iterable<List<Facet<T>>> facetGroups, T item) {
+        for (List<Facet<T>> facets : facetGroups) {
+            boolean matched = false;
+            for (int i = 0; i < facets.size() && !matched; i++) {
+                matched = facets.get(i).isItemMatched(item);
+            }
+            if (!matched) {
+                return false;
             }
-            return query.match(splittedName);
         }
+        return true;
     }
 
-    public boolean isQueryEmpty() {
+    public synchronized boolean isQueryEmpty() {
         return  query == null || query.isEmpty();
     }
 
+    /**
+     * @return true if there is neither query nor facets, so every item matches.
+     */
+    public synchronized boolean isEmpty() {
+        return isQueryEmpty() && facetGroups.isEmpty();
+    }
+
+    public synchronized void addFacet(String group, Facet<T> facet) {
+        List<Facet<T>> facets = facetGroups.get(group);
+        if (facets == null) {
+            facets = new ArrayList<>();
+            facetGroups.put(group, facets);
+        }
+        if (!facets.contains(facet)) {
+            facets.add(facet);
+        }
+    }
+
+    /**
+     * Replaces facets of group with facet.
+     */
+    public synchronized void setFacet(String group, Facet<T> facet) {
+        removeFacets(group);
+        addFacet(group, facet);
+    }
+
+    public synchronized void removeFacet(String group, Facet<T> facet) {
+        List<Facet<T>> facets = facetGroups.get(group);
+        if (facets != null && facets.remove(facet)) {
+            facetMatches.remove(facet);
+            if (facets.isEmpty()) {
+                facetGroups.remove(group);
+            }
+        }
+    }
+
+    public synchronized void removeFacets(String group) {
+        List<Facet<T>> facets = facetGroups.remove(group);
+        if (facets != null) {
+            for (Facet<T> facet : facets) {
+                facetMatches.remove(facet);
+            }
+        }
+    }
+
+    public synchronized void clearFacets() {
+        facetGroups.clear();
+        facetMatches.clear();
+    }
+
+    public synchronized boolean hasFacets() {
+        return !facetGroups.isEmpty();
+    }
+
+    /**
+     * Enables matching of query against big lists on several threads of {@link #getParallelExecutor()}.
+     * Query, facets, normalizers, {@link #itemToString(Object)} and overrides of adapter's {@code isItemMatched}
+     * must be safe to use from several threads.
+     */
+    public synchronized void setParallelEnabled(boolean parallelEnabled) {
+        this.parallelEnabled = parallelEnabled;
+    }
+
+    public synchronized boolean isParallelEnabled() {
+        return parallelEnabled;
+    }
+
+    /**
+     * Sets minimum number of items that are matched in parallel.
+     */
+    public synchronized void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public synchronized int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public synchronized void setParallelExecutor(Executor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+    }
+
+    public synchronized Executor getParallelExecutor() {
+        return parallelExecutor != null ? parallelExecutor : BackgroundExecutor.getParallel();
+    }
+
+    /**
+     * Matches every source item in parallel without locking this filter, so it can be used while matching runs.
+     * Workers read tokens from the cache as it was at the start and make tokens of other items themselves,
+     * then they are added to the cache unless it was cleared meanwhile.
+     *
+     * @param itemMatcher if not null it's called for every item instead of matching query and facets,
+     *                    {@link #isItemMatchQuery(Object)} called from it matches them with worker tokens.
+     * @param generation if not null matching stops when it isn't expectedGeneration anymore.
+     * @return bit set of matching source indices or null if parallel mode is disabled, source is too small
+     * or matching was stopped.
+     */
+    public long[] findMatchesInParallel(List<T> source, Query query, final Facet<T> itemMatcher,
+                                        final Generation generation, final int expectedGeneration) {
+        final TokenArena snapshot;
+        final List<Normalizer> normalizersSnapshot;
+        final List<List<Facet<T>>> facetsSnapshot;
+        final int startVersion;
+        Executor executor;
+        synchronized (this) {
+            if (!parallelEnabled || source.size() < parallelThreshold || query == null || query.isEmpty()) {
+                return null;
+            }
+            snapshot = shareCache();
+            normalizersSnapshot = new ArrayList<>(normalizers);
+            facetsSnapshot = new ArrayList<>();
+            for (List<Facet<T>> facets : facetGroups.values()) {
+                facetsSnapshot.add(new ArrayList<>(facets));
+            }
+            startVersion = version;
+            executor = getParallelExecutor();
+        }
+
+        final List<T> items = source;
+        final Query itemsQuery = query;
+        final long[] matches = new long[bitsLength(items.size())];
+        int parallelism = BackgroundExecutor.getParallelism();
+        final int chunkSize = Math.max(BITS_PER_WORD,
+                (matches.length + parallelism - 1) / parallelism * BITS_PER_WORD);
+        final int chunksCount = (items.size() + chunkSize - 1) / chunkSize;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch chunksDone = new CountDownLatch(chunksCount);
+        final AtomicReference<RuntimeException> error = new AtomicReference<>();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final List<ParallelMatcher> matchers = new ArrayList<>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                ParallelMatcher matcher = new ParallelMatcher(snapshot, itemsQuery, normalizersSnapshot, facetsSnapshot);
+                synchronized (matchers) {
+                    matchers.add(matcher);
+                }
+                parallelMatcher.set(matcher);
+                try {
+                    int chunk;
+                    while ((chunk = nextChunk.getAndIncrement()) < chunksCount) {
+                        try {
+                            if (stopped.get()) {
+                                continue;
+                            }
+                            if (generation != null && !generation.isCurrent(expectedGeneration)) {
+                                stopped.set(true);
+                                continue;
+                            }
+                            int end = Math.min(items.size(), (chunk + 1) * chunkSize);
+                            for (int index = chunk * chunkSize; index < end; index++) {
+                                T item = items.get(index);
+                                boolean matched = itemMatcher != null
+                                        ? itemMatcher.isItemMatched(item)
+                                        : matcher.isItemMatched(item);
+                                if (matched) {
+                                    matches[index >>> 6] |= 1L << (index & 63);
+                                }
+                            }
+                        } catch (RuntimeException ex) {
+                            error.compareAndSet(null, ex);
+                            stopped.set(true);
+                        } finally {
+                            chunksDone.countDown();
+                        }
+                    }
+                } finally {
+                    parallelMatcher.remove();
+                }
+            }
+        };
+
+        try {
+            for (int i = 1; i < chunksCount; i++) {
+                executor.execute(worker);
+            }
+            worker.run();
+            awaitUninterruptibly(chunksDone);
+        } finally {
+            synchronized (this) {
+                releaseCache(snapshot);
+                if (version == startVersion && error.get() == null) {
+                    synchronized (matchers) {
+                        for (ParallelMatcher matcher : matchers) {
+                            matcher.addTokensTo(this);
+                        }
+                    }
+                }
+            }
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return stopped.get() ? null : matches;
+    }
+
+    /**
+     * Chunks claimed by workers are counted down even if matching was stopped.
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return cache that isn't changed until {@link #releaseCache(TokenArena)}, changes go to its copy.
+     */
+    private TokenArena shareCache() {
+        if (sharedCache != cache) {
+            sharedCache = cache;
+            sharedCacheReaders = 0;
+        }
+        sharedCacheReaders++;
+        return cache;
+    }
+
+    private void releaseCache(TokenArena shared) {
+        if (shared == sharedCache) {
+            sharedCacheReaders--;
+        }
+    }
+
+    private boolean isCacheShared() {
+        return sharedCache == cache && sharedCacheReaders > 0;
+    }
+
+    /**
+     * Copies cache before it's changed if parallel matching reads it.
+     */
+    private void unshareCache() {
+        if (isCacheShared()) {
+            cache = cache.copy();
+        }
+    }
+
+    /**
+     * Matches items on a worker thread with tokens from a cache snapshot or its own tokens.
+     */
+    private class ParallelMatcher {
+        private final TokenArena snapshot;
+        private final Query query;
+        private final List<Normalizer> normalizers;
+        private final List<List<Facet<T>>> facetGroups;
+        private final TokenArena ownTokens = new TokenArena();
+        private final List<T> ownItems = new ArrayList<>();
+        private final TokenArena.Tokens itemTokens = new TokenArena.Tokens();
+
+        ParallelMatcher(TokenArena snapshot, Query query, List<Normalizer> normalizers,
+                        List<List<Facet<T>>> facetGroups) {
+            this.snapshot = snapshot;
+            this.query = query;
+            this.normalizers = normalizers;
+            this.facetGroups = facetGroups;
+        }
+
+        boolean isItemMatched(T item) {
+            return (query == null || query.isEmpty() || isTokensMatch(query, getTokens(item)))
+                    && isItemMatchFacets(facetGroups, item);
+        }
+
+        private TokenArena.Tokens getTokens(T item) {
+            if (!snapshot.get(item, itemTokens) && !ownTokens.get(item, itemTokens)) {
+                ownTokens.put(item, normalize(itemToString(item), normalizers), itemTokens);
+                ownItems.add(item);
+            }
+            return itemTokens;
+        }
+
+        /**
+         * Copies tokens made by this worker to the cache, filter must be locked.
+         */
+        void addTokensTo(ItemsFilter<T> filter) {
+            for (T item : ownItems) {
+                if (!filter.cache.get(item, filter.tokens) && ownTokens.get(item, itemTokens)) {
+                    filter.unshareCache();
+                    filter.cache.put(item, itemTokens, filter.tokens);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds source items that match query and facets with bit set operations. Matches of every facet are
+     * cached for sourceVersion, so after a facet change only that facet is checked against items.
+     *
+     * @param sourceVersion number that changes whenever source items or their order change.
+     * @return bit set of matching source indices or null if there are no facets.
+     */
+    public long[] findMatches(List<T> source, int sourceVersion, Query query) {
+        return findMatches(source, sourceVersion, query, null);
+    }
+
+    /**
+     * Like {@link #findMatches(List, int, Query)}, but items that match facets are checked with itemMatcher
+     * instead of query. Items are matched without locking this filter, {@link #isItemMatchQuery(Object)}
+     * called from itemMatcher matches only query then.
+     */
+    public long[] findMatches(List<T> source, int sourceVersion, Query query, Facet<T> itemMatcher) {
+        long[] result = null;
+        TokenArena snapshot;
+        ParallelMatcher matcher;
+        int startVersion;
+        synchronized (this) {
+            if (facetGroups.isEmpty()) {
+                return null;
+            }
+            if (facetMatchesVersion != sourceVersion) {
+                facetMatches.clear();
+                facetMatchesVersion = sourceVersion;
+            }
+            for (List<Facet<T>> facets : facetGroups.values()) {
+                long[] groupMatches = new long[bitsLength(source.size())];
+                for (Facet<T> facet : facets) {
+                    or(groupMatches, getFacetMatches(facet, source));
+                }
+                if (result == null) {
+                    result = groupMatches;
+                } else {
+                    and(result, groupMatches);
+                }
+            }
+
+            boolean hasQuery = query != null && !query.isEmpty();
+            if (hasQuery) {
+                long[] queryMatches = query instanceof CacheableQuery ? matchesCache.get(query, sourceVersion) : null;
+                IntArrayList candidates = new IntArrayList();
+                if (queryMatches != null) {
+                    and(result, queryMatches);
+                } else if (findCandidates(source, sourceVersion, query, candidates)) {
+                    long[] candidateBits = new long[result.length];
+                    for (int i = 0; i < candidates.size(); i++) {
+                        int index = candidates.get(i);
+                        candidateBits[index >>> 6] |= 1L << (index & 63);
+                    }
+                    and(result, candidateBits);
+                }
+            }
+            if (!hasQuery && itemMatcher == null) {
+                return result;
+            }
+            snapshot = shareCache();
+            matcher = new ParallelMatcher(snapshot, query, new ArrayList<>(normalizers),
+                    Collections.<List<Facet<T>>>emptyList());
+            startVersion = version;
+        }
+
+        parallelMatcher.set(matcher);
+        try {
+            for (int i = 0; i < result.length; i++) {
+                long word = result[i];
+                while (word != 0) {
+                    long bit = Long.lowestOneBit(word);
+                    T item = source.get((i << 6) + Long.numberOfTrailingZeros(word));
+                    boolean matched = itemMatcher != null
+                            ? itemMatcher.isItemMatched(item)
+                            : matcher.isItemMatched(item);
+                    if (!matched) {
+                        result[i] &= ~bit;
+                    }
+                    word &= ~bit;
+                }
+            }
+        } finally {
+            parallelMatcher.remove();
+            synchronized (this) {
+                releaseCache(snapshot);
+                if (version == startVersion) {
+                    matcher.addTokensTo(this);
+                }
+            }
+        }
+        return result;
+    }
+
+    private long[] getFacetMatches(Facet<T> facet, List<T> source) {
+        long[] matches = facetMatches.get(facet);
+        if (matches == null) {
+            matches = new long[bitsLength(source.size())];
+            int index = 0;
+            for (T item : source) {
+                if (facet.isItemMatched(item)) {
+                    matches[index >>> 6] |= 1L << (index & 63);
+                }
+                index++;
+            }
+            facetMatches.put(facet, matches);
+        }
+        return matches;
+    }
+
+    private static int bitsLength(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    private static void and(long[] target, long[] bits) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= bits[i];
+        }
+    }
+
+    private static void or(long[] target, long[] bits) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= bits[i];
+        }
+    }
+
+    /**
+     * Enables n-gram index of item tokens that is used by {@link #findCandidates(List, int, IntArrayList)}.
+     * Disabled by default. Postings hold source indices, so after items are inserted, removed or moved
+     * the index is rebuilt from cached tokens on the next lookup, in time linear in the length of all tokens.
+     * Items replaced with {@link #onItemReplaced(int, Object, Object, int, int)} only update their own postings.
+     */
+    public synchronized void setIndexEnabled(boolean indexEnabled) {
+        this.indexEnabled = indexEnabled;
+        if (!indexEnabled) {
+            index = null;
+            indexValid = false;
+        }
+    }
+
+    public synchronized boolean isIndexEnabled() {
+        return indexEnabled;
+    }
+
+    /**
+     * Finds source items that can match {@link IndexableQuery} with index. Index is built on first call
+     * and rebuilt when sourceVersion changes. Candidates should be checked with {@link #isItemMatchQuery(Object)}.
+     *
+     * @param sourceVersion number that changes whenever source items or their order change.
+     * @param candidates receives ascending indices of source items.
+     * @return false if index is disabled or can't narrow down query, so every item is a candidate.
+     */
+    public synchronized boolean findCandidates(List<T> source, int sourceVersion, IntArrayList candidates) {
+        return findCandidates(source, sourceVersion, query, candidates);
+    }
+
+    private boolean findCandidates(List<T> source, int sourceVersion, Query query, IntArrayList candidates) {
+        if (!indexEnabled || query == null || query.isEmpty() || !(query instanceof IndexableQuery)) {
+            return false;
+        }
+        String[][] variants = ((IndexableQuery) query).getWordVariants();
+        if (!canNarrow(variants)) {
+            return false;
+        }
+
+        if (index == null || !indexValid || indexedVersion != sourceVersion) {
+            buildIndex(source, sourceVersion);
+        }
+        int[] result = new int[0];
+        for (String[] words : variants) {
+            int[] variantCandidates = null;
+            for (String word : words) {
+                int[] wordCandidates = index.findCandidates(word);
+                if (wordCandidates != null) {
+                    variantCandidates = variantCandidates == null
+                            ? wordCandidates
+                            : TrigramIndex.intersect(variantCandidates, wordCandidates);
+                }
+            }
+            if (variantCandidates != null) {
+                result = TrigramIndex.union(result, variantCandidates);
+            }
+        }
+        candidates.ensureCapacity(candidates.size() + result.length);
+        for (int candidate : result) {
+            candidates.add(candidate);
+        }
+        return true;
+    }
+
+    /**
+     * Sets how many results of recent {@link CacheableQuery} queries are kept, 0 (default) disables the cache.
+     * Results are keyed only by query and source version, so don't enable it if adapter's isItemMatched
+     * depends on other state, or call {@link #clearCache()} when that state changes.
+     */
+    public synchronized void setMatchesCacheSize(int size) {
+        matchesCache.setMaxSize(size);
+    }
+
+    public synchronized int getMatchesCacheSize() {
+        return matchesCache.getMaxSize();
+    }
+
+    /**
+     * @param sourceVersion number that changes whenever source items or their order change.
+     * @return bit set of source indices that matched query, or null if query result isn't cached.
+     */
+    public synchronized long[] getCachedMatches(Query query, int sourceVersion) {
+        if (!(query instanceof CacheableQuery)) {
+            return null;
+        }
+        return matchesCache.get(query, sourceVersion);
+    }
+
+    /**
+     * Remembers source indices that matched query. Results for other source versions are dropped.
+     */
+    public synchronized void cacheMatches(Query query, int sourceVersion, long[] matches) {
+        if (query instanceof CacheableQuery) {
+            matchesCache.put(query, sourceVersion, matches);
+        }
+    }
+
+    private boolean canNarrow(String[][] variants) {
+        for (String[] words : variants) {
+            boolean hasLongWord = false;
+            for (String word : words) {
+                if (word.length() >= TrigramIndex.GRAM_LENGTH) {
+                    hasLongWord = true;
+                    break;
+                }
+            }
+            if (!hasLongWord) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildIndex(List<T> source, int sourceVersion) {
+        if (index == null) {
+            index = new TrigramIndex();
+        } else {
+            index.clear();
+        }
+        int position = 0;
+        for (T item : source) {
+            index.add(position++, getTokens(item));
+        }
+        indexedVersion = sourceVersion;
+        indexValid = true;
+    }
+
+    /**
+     * Adds normalizer that is applied to item text when its tokens are cached. Cache is cleared.
+     */
+    public synchronized void addNormalizer(Normalizer normalizer) {
+        normalizers.add(normalizer);
+        clearCache();
+    }
+
+    public synchronized void removeNormalizer(Normalizer normalizer) {
+        if (normalizers.remove(normalizer)) {
+            clearCache();
+        }
+    }
+
+    public synchronized void clearNormalizers() {
+        if (!normalizers.isEmpty()) {
+            normalizers.clear();
+            clearCache();
+        }
+    }
+
+    /**
+     * Tokens are cached by item identity.
+     */
+    private TokenArena.Tokens getTokens(T item) {
+        if (!cache.get(item, tokens)) {
+            unshareCache();
+            cache.put(item, normalize(itemToString(item), normalizers), tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * @return text followed by its other spellings.
+     */
+    private static String normalize(String text, List<Normalizer> normalizers) {
+        if (text == null || normalizers.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = null;
+        for (Normalizer normalizer : normalizers) {
+            String normalized = normalizer.normalize(text);
+            if (normalized != null && !normalized.equals(text)) {
+                if (result == null) {
+                    result = new StringBuilder(text);
+                }
+                result.append(' ').append(normalized);
+            }
+        }
+        return result != null ? result.toString() : text;
+    }
+
     protected String itemToString(T item) {
         return item == null ? "" : item.toString();
     }
 
-    public void clearCache() {
-        cache.clear();
+    /**
+     * @return number that changes when items may match queries differently, like after normalizers
+     * are changed or cache is cleared.
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    public synchronized void clearCache() {
+        version++;
+        if (isCacheShared()) {
+            cache = new TokenArena();
+        } else {
+            cache.clear();
+        }
+        indexValid = false;
+        matchesCache.clear();
+        facetMatches.clear();
+        matchSpans.clear();
+    }
+
+    /**
+     * Drops cached tokens of item after its text changed. Facet matches, cached query matches and index
+     * don't know position of item, so they are dropped too. Use
+     * {@link #onItemReplaced(int, Object, Object, int, int)} when the position is known.
+     */
+    public synchronized void clearCache(T item) {
+        version++;
+        unshareCache();
+        cache.remove(item);
+        indexValid = false;
+        matchesCache.clear();
+        facetMatches.clear();
+        matchSpans.remove(item != null ? item : NULL_ITEM);
+    }
+
+    /**
+     * Updates caches after item at sourceIndex was replaced with newItem, or changed in place, while other
+     * source items stayed at their indices. Only tokens of that item, its facet matches and its index postings
+     * are updated, so caches of oldSourceVersion stay valid for newSourceVersion.
+     */
+    public synchronized void onItemReplaced(int sourceIndex, T oldItem, T newItem,
+                                            int oldSourceVersion, int newSourceVersion) {
+        boolean updateIndex = index != null && indexValid && indexedVersion == oldSourceVersion;
+        if (updateIndex) {
+            if (cache.get(oldItem, tokens)) {
+                index.remove(sourceIndex, tokens);
+            } else {
+                indexValid = false;
+                updateIndex = false;
+            }
+        }
+        unshareCache();
+        cache.remove(oldItem);
+        matchSpans.remove(oldItem != null ? oldItem : NULL_ITEM);
+        if (newItem != oldItem) {
+            cache.remove(newItem);
+            matchSpans.remove(newItem != null ? newItem : NULL_ITEM);
+        }
+        TokenArena.Tokens newTokens = getTokens(newItem);
+        if (updateIndex) {
+            index.insert(sourceIndex, newTokens);
+            indexedVersion = newSourceVersion;
+        }
+
+        if (facetMatchesVersion == oldSourceVersion) {
+            long bit = 1L << (sourceIndex & 63);
+            for (Map.Entry<Facet<T>, long[]> entry : facetMatches.entrySet()) {
+                long[] matches = entry.getValue();
+                if (entry.getKey().isItemMatched(newItem)) {
+                    matches[sourceIndex >>> 6] |= bit;
+                } else {
+                    matches[sourceIndex >>> 6] &= ~bit;
+                }
+            }
+            facetMatchesVersion = newSourceVersion;
+        }
     }
 }
@@ -0,0 +1,61 @@
+package com.shaubert.ui.adapters;
+
+/**
+ * Retypes text as if it was typed with other keyboard layout, so items are found by queries that were
+ * typed without switching layout. Text is lower cased first.
+ */
+public class KeyboardLayoutNormalizer implements ItemsFilter.Normalizer {
+
+    private static final String RUSSIAN_LAYOUT =
+            "\u0439\u0446\u0443\u043a\u0435\u043d\u0433\u0448\u0449\u0437\u0445\u044a"
+                    + "\u0444\u044b\u0432\u0430\u043f\u0440\u043e\u043b\u0434\u0436\u044d"
+                    + "\u044f\u0447\u0441\u043c\u0438\u0442\u044c\u0431\u044e\u0451";
+    private static final String ENGLISH_LAYOUT =
+            "qwertyuiop[]"
+                    + "asdfghjkl;'"
+                    + "zxcvbnm,.`";
+
+    private final String layout;
+    private final String otherLayout;
+
+    /**
+     * @param layout lower case characters of keys.
+     * @param otherLayout characters of the same keys in other layout.
+     */
+    public KeyboardLayoutNormalizer(String layout, String otherLayout) {
+        if (layout.length() != otherLayout.length()) {
+            throw new IllegalArgumentException("layouts must have the same keys");
+        }
+        this.layout = layout;
+        this.otherLayout = otherLayout;
+    }
+
+    /**
+     * @return normalizer that swaps Russian and English layouts in both directions.
+     */
+    public static KeyboardLayoutNormalizer russianEnglish() {
+        return new KeyboardLayoutNormalizer(RUSSIAN_LAYOUT, ENGLISH_LAYOUT);
+    }
+
+    @Override
+    public String normalize(String text) {
+        char[] result = new char[text.length()];
+        boolean changed = false;
+        for (int i = 0; i < result.length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int index = layout.indexOf(c);
+            if (index >= 0) {
+                c = otherLayout.charAt(index);
+                changed = true;
+            } else {
+                index = otherLayout.indexOf(c);
+                if (index >= 0) {
+                    c = layout.charAt(index);
+                    changed = true;
+                }
+            }
+            result[i] = c;
+        }
+        return changed ? new String(result) : null;
+    }
+}
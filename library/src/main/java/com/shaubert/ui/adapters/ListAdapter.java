@@ -8,6 +8,12 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
+import com.shaubert.ui.adapters.common.FilteredList;
+import com.shaubert.ui.adapters.common.IntArrayList;
+import com.shaubert.ui.adapters.common.RankedIndices;
+import com.shaubert.ui.adapters.common.SortedLists;
+import com.shaubert.ui.adapters.common.SortedTreeList;
+
 import java.util.*;
 
 public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinnerAdapter {
@@ -17,12 +23,26 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
 
     private boolean notifyOnChange = true;
     private List<T> allItems = new ArrayList<>();
-    private List<T> items = new ArrayList<>();
+    private FilteredList<T> items = new FilteredList<>(allItems);
     private List<T> readOnlyItems = Collections.unmodifiableList(items);
 
     private Comparator<T> itemsComparator;
     private boolean comparable;
     private ItemsFilter<T> itemsFilter;
+    private boolean indexedStorage;
+    private boolean detectSortedItems;
+    private QueryScheduler queryScheduler;
+    private int itemsVersion;
+    private final FilterHistory filterHistory = new FilterHistory();
+    private final ItemsFilter.Facet<T> itemMatcher = new ItemsFilter.Facet<T>() {
+        @Override
+        public boolean isItemMatched(T item) {
+            return ListAdapter.this.isItemMatched(item);
+        }
+    };
+    private ItemsFilter.Query viewQuery;
+    private int viewItemsVersion = -1;
+    private int historyFilterVersion;
 
     public void setNotifyOnChange(boolean notifyOnChange) {
         this.notifyOnChange = notifyOnChange;
@@ -30,14 +50,90 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
 
     public void setComparable(boolean comparable) {
         this.comparable = comparable;
+        updateStorageComparator();
     }
 
     public void setItemsFilter(ItemsFilter<T> itemsFilter) {
         this.itemsFilter = itemsFilter;
+        resetFilterHistory();
+        historyFilterVersion = itemsFilter != null ? itemsFilter.getVersion() : 0;
     }
 
     public void setItemsComparator(Comparator<T> itemsComparator) {
         this.itemsComparator = itemsComparator;
+        updateStorageComparator();
+    }
+
+    /**
+     * Keeps items in order-statistic trees, so sorted insertion and removal of a single item,
+     * {@link #getIndexOf(Object)} and {@link #getItem(int)} take O(log n) instead of resorting
+     * or scanning the whole list. Requires items comparator or comparable items.
+     */
+    public void setIndexedStorage(boolean indexedStorage) {
+        if (this.indexedStorage != indexedStorage) {
+            this.indexedStorage = indexedStorage;
+            allItems = createItemsList(allItems);
+            items.setSource(allItems);
+        }
+    }
+
+    public boolean isIndexedStorage() {
+        return indexedStorage;
+    }
+
+    /**
+     * If enabled {@link #addItems(Collection)} checks if new items are already sorted and merges them
+     * like {@link #addSortedItems(Collection)}.
+     */
+    public void setDetectSortedItems(boolean detectSortedItems) {
+        this.detectSortedItems = detectSortedItems;
+    }
+
+    public boolean isDetectSortedItems() {
+        return detectSortedItems;
+    }
+
+    private List<T> createItemsList(Collection<T> source) {
+        if (indexedStorage) {
+            return new SortedTreeList<>(getStorageComparator(), source);
+        } else {
+            return new ArrayList<>(source);
+        }
+    }
+
+    private void updateStorageComparator() {
+        if (indexedStorage) {
+            ((SortedTreeList<T>) allItems).setComparator(getStorageComparator());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<? super T> getStorageComparator() {
+        if (itemsComparator != null) {
+            return itemsComparator;
+        } else if (comparable) {
+            return (Comparator<? super T>) NATURAL_ORDER;
+        } else {
+            return null;
+        }
+    }
+
+    private boolean canInsertSorted(int newItemsCount) {
+        return indexedStorage
+                && newItemsCount < allItems.size()
+                && ((SortedTreeList<T>) allItems).isSorted();
+    }
+
+    private void insertSorted(Collection<T> newItems) {
+        onItemsChanged();
+        SortedTreeList<T> allItemsTree = (SortedTreeList<T>) allItems;
+        for (T item : newItems) {
+            int index = allItemsTree.addSorted(item);
+            int position = items.onSourceInserted(index, isItemMatched(item));
+            if (position >= 0) {
+                onItemRangeInserted(position, 1);
+            }
+        }
     }
 
     public Comparator<T> getItemsComparator() {
@@ -48,6 +144,35 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
         return comparable;
     }
 
+    /**
+     * Delays {@link #setFilterQuery(ItemsFilter.Query)} until no new query comes for delayMillis, so only the last
+     * of quickly typed queries is filtered. Empty query is applied at once. 0 disables the delay.
+     */
+    public void setFilterQueryDelay(long delayMillis) {
+        if (queryScheduler == null) {
+            queryScheduler = new QueryScheduler(new QueryScheduler.Callback() {
+                @Override
+                public void executeQuery(ItemsFilter.Query query) {
+                    applyFilterQuery(query);
+                }
+            });
+        }
+        queryScheduler.setDelay(delayMillis);
+    }
+
+    public long getFilterQueryDelay() {
+        return queryScheduler != null ? queryScheduler.getDelay() : 0;
+    }
+
+    /**
+     * Filters all items again with current query, for example after facets of items filter are changed
+     * or after state used by {@link #isItemMatched(Object)} is changed.
+     */
+    public void refilter() {
+        resetFilterHistory();
+        applyFilterQuery(itemsFilter != null ? itemsFilter.getQuery() : null);
+    }
+
     public void clearFilter() {
         setFilterQuery((ItemsFilter.Query) null);
     }
@@ -57,6 +182,14 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
     }
 
     public void setFilterQuery(ItemsFilter.Query query) {
+        if (queryScheduler != null) {
+            queryScheduler.schedule(query);
+        } else {
+            applyFilterQuery(query);
+        }
+    }
+
+    private void applyFilterQuery(ItemsFilter.Query query) {
         if (itemsFilter != null) {
             itemsFilter.setQuery(query);
         }
@@ -65,14 +198,11 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
         notifyDatasetIfNeeded();
     }
 
-    protected List<T> filterItems() {
-        List<T> result = new ArrayList<>(allItems.size());
-        for (T item : allItems) {
-            if (isItemMatched(item)) {
-                result.add(item);
-            }
-        }
-        return result;
+    /**
+     * @return spans of filter query in item at position, see {@link ItemsFilter#getMatchSpans(Object)}.
+     */
+    public int[] getMatchSpans(int position) {
+        return itemsFilter != null ? itemsFilter.getMatchSpans(getItem(position)) : new int[0];
     }
 
     protected boolean isItemMatched(T item) {
@@ -83,21 +213,139 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
         }
     }
 
+    /**
+     * @return score of item for {@link ItemsFilter.RankedQuery}, bigger is better, or 0 if item doesn't match.
+     */
+    protected int getItemScore(T item) {
+        if (itemsFilter != null) {
+            return itemsFilter.getItemScore(item);
+        } else {
+            return 1;
+        }
+    }
+
     protected void filter() {
-        items.clear();
-        if (itemsFilter != null && itemsFilter.isQueryEmpty()) {
-            items.addAll(allItems);
+        ItemsFilter.Query query = itemsFilter != null ? itemsFilter.getQuery() : null;
+        boolean hasFacets = itemsFilter != null && itemsFilter.hasFacets();
+        checkFilterVersion();
+        FilterHistory.Plan plan = hasFacets
+                ? new FilterHistory.Plan()
+                : filterHistory.plan(query, itemsVersion, viewQuery, viewItemsVersion, items);
+        boolean ranked = itemsFilter != null && itemsFilter.isQueryRanked();
+        long[] matches = hasFacets && !ranked ? itemsFilter.findMatches(allItems, itemsVersion, query, itemMatcher) : null;
+        long[] cachedMatches = matches == null && !ranked && itemsFilter != null
+                ? itemsFilter.getCachedMatches(query, itemsVersion)
+                : null;
+        IntArrayList candidates = new IntArrayList();
+        if (itemsFilter != null && itemsFilter.isEmpty()) {
+            items.showAll();
+        } else if (ranked) {
+            rank();
+        } else if (matches != null) {
+            items.setSourceBits(matches);
+        } else if (cachedMatches != null) {
+            items.setSourceBits(cachedMatches);
+        } else if (plan.restored != null) {
+            items.setSourceIndices(plan.restored.sourceIndices);
+        } else if (plan.base != null) {
+            filterCandidates(plan.base);
+        } else if (itemsFilter != null && itemsFilter.findCandidates(allItems, itemsVersion, candidates)) {
+            filterCandidates(candidates.toArray());
         } else {
-            items.addAll(filterItems());
+            filterAll(query);
+        }
+        if (hasFacets) {
+            resetFilterHistory();
+            return;
+        }
+        filterHistory.apply(plan, itemsVersion);
+        viewQuery = query;
+        viewItemsVersion = itemsVersion;
+        if (cachedMatches == null
+                && !items.isPassthrough()
+                && query instanceof ItemsFilter.CacheableQuery
+                && itemsFilter.getMatchesCacheSize() > 0) {
+            itemsFilter.cacheMatches(query, itemsVersion, items.toSourceBits());
+        }
+    }
+
+    /**
+     * Shows matched items best first.
+     */
+    private void rank() {
+        RankedIndices rankedIndices = new RankedIndices(0, 0);
+        int index = 0;
+        for (T item : allItems) {
+            int score = getItemScore(item);
+            if (score > 0) {
+                rankedIndices.add(index, score);
+            }
+            index++;
+        }
+        items.showRanked(rankedIndices.toSortedIndices());
+    }
+
+    private void filterAll(ItemsFilter.Query query) {
+        long[] matches = itemsFilter != null
+                ? itemsFilter.findMatchesInParallel(allItems, query, itemMatcher, null, 0)
+                : null;
+        if (matches != null) {
+            items.setSourceBits(matches);
+            return;
+        }
+
+        matches = new long[(allItems.size() + 63) >>> 6];
+        int index = 0;
+        for (T item : allItems) {
+            if (isItemMatched(item)) {
+                matches[index >>> 6] |= 1L << index;
+            }
+            index++;
+        }
+        items.setSourceBits(matches);
+    }
+
+    /**
+     * Drops saved results if items filter has changed how items match, like after normalizers are changed.
+     */
+    private void checkFilterVersion() {
+        if (itemsFilter != null && itemsFilter.getVersion() != historyFilterVersion) {
+            resetFilterHistory();
+            historyFilterVersion = itemsFilter.getVersion();
         }
     }
 
+    private void resetFilterHistory() {
+        filterHistory.clear();
+        viewQuery = null;
+        viewItemsVersion = -1;
+    }
+
+    private void filterCandidates(int[] candidates) {
+        long[] matches = new long[(allItems.size() + 63) >>> 6];
+        for (int index : candidates) {
+            if (isItemMatched(allItems.get(index))) {
+                matches[index >>> 6] |= 1L << index;
+            }
+        }
+        items.setSourceBits(matches);
+    }
+
+    private void onItemsChanged() {
+        itemsVersion++;
+    }
+
     public void clear() {
         replaceAll(Collections.<T>emptyList());
     }
 
     public void replaceItem(T oldItem, T newItem) {
-        allItems.remove(oldItem);
+        int index = allItems.indexOf(oldItem);
+        if (index >= 0) {
+            allItems.remove(index);
+            onItemsChanged();
+            items.onSourceRemoved(index);
+        }
         addItem(newItem);
     }
 
@@ -107,16 +355,28 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
 
     public void replaceAll(Collection<T> newItems, boolean shouldResort) {
         allItems.clear();
+        allItems.addAll(newItems);
+        if (shouldResort) {
+            sort(allItems);
+        }
+        onItemsChanged();
         if (itemsFilter != null) {
             itemsFilter.clearCache();
         }
-        addItems(newItems, shouldResort);
+        filter();
+        onDatasetChanged();
+        notifyDatasetIfNeeded();
     }
 
     public void addItem(T item) {
-        allItems.add(item);
-        sort(allItems);
-        filter();
+        if (canInsertSorted(1)) {
+            insertSorted(Collections.singletonList(item));
+        } else {
+            allItems.add(item);
+            sort(allItems);
+            onItemsChanged();
+            filter();
+        }
         onDatasetChanged();
         notifyDatasetIfNeeded();
     }
@@ -126,34 +386,167 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
     }
 
     public void addItems(Collection<T> items, boolean shouldResort) {
-        for (T item : items) {
-            allItems.add(item);
+        if (shouldResort
+                && detectSortedItems
+                && getStorageComparator() != null
+                && SortedLists.isSorted(items, getStorageComparator())
+                && mergeSortedItems(items)) {
+            return;
         }
-        if (shouldResort) {
-            sort(allItems);
+        addAndSortItems(items, shouldResort);
+    }
+
+    /**
+     * Adds items that are already sorted by items comparator. Items are merged into
+     * sorted items and filtered items in O(n + m) without resorting.
+     */
+    public void addSortedItems(Collection<T> sortedItems) {
+        if (!mergeSortedItems(sortedItems)) {
+            addAndSortItems(sortedItems, true);
         }
-        filter();
+    }
+
+    private boolean mergeSortedItems(Collection<T> sortedItems) {
+        Comparator<? super T> comparator = getStorageComparator();
+        if (comparator == null
+                || allItems.isEmpty()
+                || sortedItems.isEmpty()
+                || canInsertSorted(sortedItems.size())) {
+            return false;
+        }
+
+        IntArrayList insertedIndices = new IntArrayList(sortedItems.size());
+        List<T> mergedAllItems = SortedLists.merge(allItems, sortedItems, comparator, insertedIndices);
+        if (mergedAllItems == null) {
+            return false;
+        }
+
+        boolean[] visible = new boolean[sortedItems.size()];
+        int i = 0;
+        for (T item : sortedItems) {
+            visible[i++] = isItemMatched(item);
+        }
+
+        allItems = indexedStorage ? createItemsList(mergedAllItems) : mergedAllItems;
+        onItemsChanged();
+        items.setSource(allItems);
+        IntArrayList newPositions = new IntArrayList(sortedItems.size());
+        items.onSourceInserted(insertedIndices.toArray(), visible, newPositions);
+        onItemPositionsInserted(newPositions.toArray());
         onDatasetChanged();
         notifyDatasetIfNeeded();
+        return true;
+    }
+
+    private void addAndSortItems(Collection<T> items, boolean shouldResort) {
+        if (shouldResort && canInsertSorted(items.size())) {
+            insertSorted(items);
+        } else if (!shouldResort && !items.isEmpty()) {
+            appendItems(items);
+        } else {
+            for (T item : items) {
+                allItems.add(item);
+            }
+            if (shouldResort) {
+                sort(allItems);
+            }
+            onItemsChanged();
+            filter();
+        }
+        onDatasetChanged();
+        notifyDatasetIfNeeded();
+    }
+
+    /**
+     * Adds items to the end and filters only them.
+     */
+    private void appendItems(Collection<T> newItems) {
+        int start = allItems.size();
+        allItems.addAll(newItems);
+        onItemsChanged();
+
+        int[] insertedIndices = new int[allItems.size() - start];
+        boolean[] visible = new boolean[insertedIndices.length];
+        int i = 0;
+        for (T item : newItems) {
+            insertedIndices[i] = start + i;
+            visible[i] = isItemMatched(item);
+            i++;
+        }
+        IntArrayList newPositions = new IntArrayList(insertedIndices.length);
+        items.onSourceInserted(insertedIndices, visible, newPositions);
+        onItemPositionsInserted(newPositions.toArray());
+    }
+
+    /**
+     * Reports every contiguous run of sorted positions with {@link #onItemRangeInserted(int, int)}.
+     */
+    private void onItemPositionsInserted(int[] sortedPositions) {
+        int rangeStart = -1;
+        int count = 0;
+        for (int position : sortedPositions) {
+            if (rangeStart >= 0 && position == rangeStart + count) {
+                count++;
+            } else {
+                if (count > 0) {
+                    onItemRangeInserted(rangeStart, count);
+                }
+                rangeStart = position;
+                count = 1;
+            }
+        }
+        if (count > 0) {
+            onItemRangeInserted(rangeStart, count);
+        }
     }
 
     public void removeItem(T item) {
-        allItems.remove(item);
-        filter();
+        int index = allItems.indexOf(item);
+        if (index >= 0) {
+            allItems.remove(index);
+            onItemsChanged();
+            int position = items.onSourceRemoved(index);
+            if (position >= 0) {
+                onItemRangeRemoved(position, 1);
+            }
+        }
         onDatasetChanged();
         notifyDatasetIfNeeded();
     }
 
     public void removeAll(List<T> itemsToRemove) {
-        allItems.removeAll(itemsToRemove);
-        filter();
+        Set<T> removeSet = new HashSet<>(itemsToRemove);
+        boolean[] removed = new boolean[allItems.size()];
+        List<T> keptItems = new ArrayList<>(allItems.size());
+        int index = 0;
+        for (T item : allItems) {
+            if (removeSet.contains(item)) {
+                removed[index] = true;
+            } else {
+                keptItems.add(item);
+            }
+            index++;
+        }
+        allItems.clear();
+        allItems.addAll(keptItems);
+        onItemsChanged();
+        IntArrayList removedRanges = new IntArrayList();
+        items.onSourceRemoved(removed, removedRanges);
+        int removedBefore = 0;
+        for (int i = 0; i < removedRanges.size(); i += 2) {
+            int count = removedRanges.get(i + 1);
+            onItemRangeRemoved(removedRanges.get(i) - removedBefore, count);
+            removedBefore += count;
+        }
         onDatasetChanged();
         notifyDatasetIfNeeded();
     }
 
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"unchecked", "rawtypes"})
     protected void sort(List items) {
-        if (itemsComparator != null) {
+        if (items instanceof SortedTreeList) {
+            ((SortedTreeList) items).sort();
+        } else if (itemsComparator != null) {
             Collections.sort(items, itemsComparator);
         } else if (comparable) {
             Collections.sort(items);
@@ -168,6 +561,20 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
         return readOnlyItems;
     }
 
+    /**
+     * Called before {@link #onDatasetChanged()} when items were inserted at positions of filtered items.
+     * Ranges of one change are reported in order, each at positions after the previous ones are applied.
+     */
+    protected void onItemRangeInserted(int position, int count) {
+    }
+
+    /**
+     * Called before {@link #onDatasetChanged()} when items were removed from positions of filtered items.
+     * Ranges of one change are reported in order, each at positions after the previous ones are applied.
+     */
+    protected void onItemRangeRemoved(int position, int count) {
+    }
+
     protected void onDatasetChanged() {
 
     }
@@ -256,4 +663,12 @@ public abstract class ListAdapter<T> extends BaseAdapter implements ThemedSpinne
         }
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            return ((Comparable) lhs).compareTo(rhs);
+        }
+    };
+
 }
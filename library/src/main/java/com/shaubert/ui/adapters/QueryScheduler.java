@@ -0,0 +1,80 @@
+package com.shaubert.ui.adapters;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+/**
+ * Delays filter queries until typing pauses. Only the latest query is executed,
+ * empty query is executed at once.
+ */
+public class QueryScheduler {
+
+    private static final int EXECUTE_QUERY = 1;
+
+    private final Callback callback;
+    private long delayMillis;
+    private ItemsFilter.Query pendingQuery;
+    private boolean hasPendingQuery;
+
+    private Handler handler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            if (msg.what == EXECUTE_QUERY) {
+                flush();
+                return true;
+            }
+            return false;
+        }
+    });
+
+    public QueryScheduler(Callback callback) {
+        this.callback = callback;
+    }
+
+    public void setDelay(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public long getDelay() {
+        return delayMillis;
+    }
+
+    public void schedule(ItemsFilter.Query query) {
+        handler.removeMessages(EXECUTE_QUERY);
+        if (delayMillis <= 0 || query == null || query.isEmpty()) {
+            cancel();
+            callback.executeQuery(query);
+        } else {
+            pendingQuery = query;
+            hasPendingQuery = true;
+            handler.sendEmptyMessageDelayed(EXECUTE_QUERY, delayMillis);
+        }
+    }
+
+    public boolean hasPendingQuery() {
+        return hasPendingQuery;
+    }
+
+    /**
+     * Executes pending query without waiting.
+     */
+    public void flush() {
+        if (hasPendingQuery) {
+            ItemsFilter.Query query = pendingQuery;
+            cancel();
+            callback.executeQuery(query);
+        }
+    }
+
+    public void cancel() {
+        handler.removeMessages(EXECUTE_QUERY);
+        pendingQuery = null;
+        hasPendingQuery = false;
+    }
+
+    public interface Callback {
+        void executeQuery(ItemsFilter.Query query);
+    }
+
+}
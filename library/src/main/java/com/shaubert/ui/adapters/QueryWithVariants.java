@@ -1,12 +1,21 @@
 package com.shaubert.ui.adapters;
 
+import com.shaubert.ui.adapters.common.IntArrayList;
 import com.shaubert.ui.adapters.common.Strings;
+import com.shaubert.ui.adapters.common.TokenArena;
+import com.shaubert.ui.adapters.common.Tokenizer;
+import com.shaubert.ui.adapters.common.WordsMatcher;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Locale;
+import java.util.List;
 
-public class QueryWithVariants implements ItemsFilter.Query {
+public class QueryWithVariants implements ItemsFilter.IndexableQuery, ItemsFilter.SpansQuery,
+        ItemsFilter.RefinableQuery, ItemsFilter.CacheableQuery {
     private String[][] queryVariantWords;
+    private String[][] nonEmptyVariantWords;
+    private WordsMatcher matcher;
 
     public QueryWithVariants(Collection<String> queryVariants) {
         if (queryVariants == null) {
@@ -15,9 +24,18 @@ public class QueryWithVariants implements ItemsFilter.Query {
             int pos = 0;
             queryVariantWords = new String[queryVariants.size()][];
             for (String queryVariant : queryVariants) {
-                queryVariantWords[pos++] = queryVariant.toLowerCase(Locale.getDefault()).split(" ");
+                queryVariantWords[pos++] = Tokenizer.split(queryVariant);
             }
         }
+
+        List<String[]> variants = new ArrayList<>(queryVariantWords.length);
+        for (String[] queryWords : queryVariantWords) {
+            if (queryWords.length > 0) {
+                variants.add(queryWords);
+            }
+        }
+        nonEmptyVariantWords = variants.toArray(new String[variants.size()][]);
+        matcher = new WordsMatcher(nonEmptyVariantWords);
     }
 
     @Override
@@ -25,17 +43,54 @@ public class QueryWithVariants implements ItemsFilter.Query {
         return queryVariantWords == null || queryVariantWords.length == 0;
     }
 
+    @Override
+    public String[][] getWordVariants() {
+        return nonEmptyVariantWords;
+    }
+
     @Override
     public boolean match(String[] splittedName) {
-        if (isEmpty()) {
-            return true;
-        } else {
-            for (String[] queryWords : queryVariantWords) {
-                if (queryWords.length > 0 && Strings.containsAllQueryWords(splittedName, queryWords)) {
-                    return true;
-                }
+        return isEmpty() || matcher.matches(splittedName);
+    }
+
+    @Override
+    public boolean match(TokenArena.Tokens tokens) {
+        return isEmpty() || matcher.matches(tokens);
+    }
+
+    @Override
+    public int[] findSpans(TokenArena.Tokens tokens) {
+        for (String[] queryWords : nonEmptyVariantWords) {
+            IntArrayList spans = new IntArrayList(queryWords.length * 3);
+            if (tokens.findSpans(queryWords, spans)) {
+                return spans.toArray();
             }
-            return false;
         }
+        return null;
+    }
+
+    @Override
+    public boolean refines(ItemsFilter.Query previous) {
+        if (previous == null || previous.isEmpty()) {
+            return true;
+        }
+        return !isEmpty()
+                && previous instanceof ItemsFilter.IndexableQuery
+                && Strings.refinesWordVariants(getWordVariants(),
+                ((ItemsFilter.IndexableQuery) previous).getWordVariants());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        QueryWithVariants that = (QueryWithVariants) o;
+        return isEmpty() == that.isEmpty() && Arrays.deepEquals(nonEmptyVariantWords, that.nonEmptyVariantWords);
+    }
+
+    @Override
+    public int hashCode() {
+        return isEmpty() ? 0 : Arrays.deepHashCode(nonEmptyVariantWords);
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,64 @@
 package com.shaubert.ui.adapters;
 
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.shaubert.ui.adapters.common.BackgroundExecutor;
+import com.shaubert.ui.adapters.common.FilteredList;
+import com.shaubert.ui.adapters.common.Generation;
+import com.shaubert.ui.adapters.common.IntArrayList;
+import com.shaubert.ui.adapters.common.ItemUpdates;
+import com.shaubert.ui.adapters.common.LongIntMap;
+import com.shaubert.ui.adapters.common.RankedIndices;
+import com.shaubert.ui.adapters.common.SortedLists;
+import com.shaubert.ui.adapters.common.SortedTreeList;
+
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> implements RecyclerAdapterExtension {
 
     private boolean notifyOnChange = true;
     private List<T> allItems = new ArrayList<>();
-    private List<T> items = new ArrayList<>();
+    private FilteredList<T> items = new FilteredList<>(allItems);
     private List<T> readOnlyItems = Collections.unmodifiableList(items);
 
     private Comparator<T> itemsComparator;
     private boolean comparable;
     private ItemsFilter<T> itemsFilter;
+    private boolean indexedStorage;
+    private ItemIdIndex<T> idIndex;
+    private boolean detectSortedItems;
 
     private boolean globalDataSetChange;
+    private int modificationCount;
+    private int itemsVersion;
+    private int itemsVersionCounter;
+    private final FilterHistory filterHistory = new FilterHistory();
+    private final ItemsFilter.Facet<T> itemMatcher = new ItemsFilter.Facet<T>() {
+        @Override
+        public boolean isItemMatched(T item) {
+            return RecyclerAdapter.this.isItemMatched(item);
+        }
+    };
+    private ItemsFilter.Query viewQuery;
+    private int viewItemsVersion = -1;
+    private int historyFilterVersion;
+
+    public static final int DEFAULT_MAX_DIFF_SIZE = 2000;
+    public static final int DEFAULT_RANKED_PREVIEW_SIZE = 20;
+    private static final int CANCELLATION_CHECK_MASK = 0xFF;
+    private static final long RANKED_PREVIEW_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private Executor diffExecutor;
+    private int maxDiffSize = DEFAULT_MAX_DIFF_SIZE;
+    private final Generation submitGeneration = new Generation();
+    private final Generation filterGeneration = new Generation();
+    private boolean asyncMode;
+    private QueryScheduler queryScheduler;
+    private int rankedPreviewSize = DEFAULT_RANKED_PREVIEW_SIZE;
 
     public void setNotifyOnChange(boolean notifyOnChange) {
         this.notifyOnChange = notifyOnChange;
@@ -23,14 +66,163 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
 
     public void setComparable(boolean comparable) {
         this.comparable = comparable;
+        updateStorageComparator();
     }
 
     public void setItemsFilter(ItemsFilter<T> itemsFilter) {
         this.itemsFilter = itemsFilter;
+        resetFilterHistory();
+        historyFilterVersion = itemsFilter != null ? itemsFilter.getVersion() : 0;
     }
 
     public void setItemsComparator(Comparator<T> itemsComparator) {
         this.itemsComparator = itemsComparator;
+        updateStorageComparator();
+    }
+
+    /**
+     * Keeps items in order-statistic trees, so sorted insertion and removal of a single item,
+     * {@link #getIndexOf(Object)} and {@link #getItem(int)} take O(log n) instead of resorting
+     * or scanning the whole list. Requires items comparator or comparable items.
+     */
+    public void setIndexedStorage(boolean indexedStorage) {
+        if (this.indexedStorage != indexedStorage) {
+            this.indexedStorage = indexedStorage;
+            allItems = createItemsList(allItems);
+            items.setSource(allItems);
+        }
+    }
+
+    public boolean isIndexedStorage() {
+        return indexedStorage;
+    }
+
+    /**
+     * Keeps map from {@link #getItemId(Object)} to item position, so {@link #getIndexOf(Object)}
+     * doesn't scan items. Item ids should be unique.
+     */
+    public void setIdIndexEnabled(boolean enabled) {
+        if (enabled && idIndex == null) {
+            idIndex = new ItemIdIndex<>(new ItemIdIndex.IdProvider<T>() {
+                @Override
+                public long getItemId(T item) {
+                    return RecyclerAdapter.this.getItemId(item);
+                }
+            });
+        } else if (!enabled) {
+            idIndex = null;
+        }
+    }
+
+    public boolean isIdIndexEnabled() {
+        return idIndex != null;
+    }
+
+    /**
+     * If enabled {@link #addItems(Collection)} checks if new items are already sorted and merges them
+     * like {@link #addSortedItems(Collection)}.
+     */
+    public void setDetectSortedItems(boolean detectSortedItems) {
+        this.detectSortedItems = detectSortedItems;
+    }
+
+    public boolean isDetectSortedItems() {
+        return detectSortedItems;
+    }
+
+    private List<T> createItemsList(Collection<T> source) {
+        if (indexedStorage) {
+            return new SortedTreeList<>(getStorageComparator(), source);
+        } else {
+            return new ArrayList<>(source);
+        }
+    }
+
+    private void updateStorageComparator() {
+        if (indexedStorage) {
+            ((SortedTreeList<T>) allItems).setComparator(getStorageComparator());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<? super T> getStorageComparator() {
+        if (itemsComparator != null) {
+            return itemsComparator;
+        } else if (comparable) {
+            return (Comparator<? super T>) NATURAL_ORDER;
+        } else {
+            return null;
+        }
+    }
+
+    private boolean canInsertSorted(int newItemsCount) {
+        return indexedStorage
+                && newItemsCount < allItems.size()
+                && ((SortedTreeList<T>) allItems).isSorted();
+    }
+
+    private void insertSorted(Collection<T> newItems) {
+        onItemsChanged();
+        SortedTreeList<T> allItemsTree = (SortedTreeList<T>) allItems;
+        for (T item : newItems) {
+            int index = allItemsTree.addSorted(item);
+            int position = items.onSourceInserted(index, isItemMatched(item));
+            if (position >= 0) {
+                if (idIndex != null) {
+                    idIndex.onInserted(items, position);
+                }
+                onItemRangeInserted(position, 1);
+            }
+        }
+    }
+
+    /**
+     * Executor for {@link #submitItems(Collection)} and async mode.
+     */
+    public void setDiffExecutor(Executor diffExecutor) {
+        this.diffExecutor = diffExecutor;
+    }
+
+    public Executor getDiffExecutor() {
+        return diffExecutor != null ? diffExecutor : BackgroundExecutor.get();
+    }
+
+    /**
+     * @param maxDiffSize max number of inserted plus removed items for which {@link #submitItems(Collection)}
+     *                    dispatches granular notifications. Bigger rewrites end with a single
+     *                    {@link #notifyDataSetChanged()}. Negative value means no limit.
+     */
+    public void setMaxDiffSize(int maxDiffSize) {
+        this.maxDiffSize = maxDiffSize;
+    }
+
+    public int getMaxDiffSize() {
+        return maxDiffSize;
+    }
+
+    /**
+     * In async mode {@link #setFilterQuery(ItemsFilter.Query)} and {@link #replaceAll(Collection)} filter,
+     * sort and prepare items with {@link #getDiffExecutor()} and publish results on the main thread at once.
+     * Requests are numbered, so outdated ones stop and their results are dropped.
+     */
+    public void setAsyncMode(boolean asyncMode) {
+        this.asyncMode = asyncMode;
+    }
+
+    public boolean isAsyncMode() {
+        return asyncMode;
+    }
+
+    /**
+     * Sets how many best items of {@link ItemsFilter.RankedQuery} are shown in async mode if scoring of all items
+     * takes longer than 50 ms. The rest of items is shown when scoring is finished. 0 disables preview.
+     */
+    public void setRankedPreviewSize(int rankedPreviewSize) {
+        this.rankedPreviewSize = rankedPreviewSize;
+    }
+
+    public int getRankedPreviewSize() {
+        return rankedPreviewSize;
     }
 
     public Comparator<T> getItemsComparator() {
@@ -41,6 +233,35 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
         return comparable;
     }
 
+    /**
+     * Delays {@link #setFilterQuery(ItemsFilter.Query)} until no new query comes for delayMillis, so only the last
+     * of quickly typed queries is filtered. Empty query is applied at once. 0 disables the delay.
+     */
+    public void setFilterQueryDelay(long delayMillis) {
+        if (queryScheduler == null) {
+            queryScheduler = new QueryScheduler(new QueryScheduler.Callback() {
+                @Override
+                public void executeQuery(ItemsFilter.Query query) {
+                    applyFilterQuery(query);
+                }
+            });
+        }
+        queryScheduler.setDelay(delayMillis);
+    }
+
+    public long getFilterQueryDelay() {
+        return queryScheduler != null ? queryScheduler.getDelay() : 0;
+    }
+
+    /**
+     * Filters all items again with current query, for example after facets of items filter are changed
+     * or after state used by {@link #isItemMatched(Object)} is changed.
+     */
+    public void refilter() {
+        resetFilterHistory();
+        applyFilterQuery(getFilterQuery());
+    }
+
     public void clearFilter() {
         setFilterQuery((ItemsFilter.Query) null);
     }
@@ -50,24 +271,34 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
     }
 
     public void setFilterQuery(ItemsFilter.Query query) {
-        globalDataSetChange = true;
+        if (queryScheduler != null) {
+            queryScheduler.schedule(query);
+        } else {
+            applyFilterQuery(query);
+        }
+    }
+
+    private void applyFilterQuery(ItemsFilter.Query query) {
         if (itemsFilter != null) {
             itemsFilter.setQuery(query);
         }
+        if (asyncMode) {
+            filterAsync();
+            return;
+        }
+
+        globalDataSetChange = true;
         filter();
         onDataSetChanged();
         notifyDataSetIfNeeded();
         globalDataSetChange = false;
     }
 
-    protected List<T> filterItems() {
-        List<T> result = new ArrayList<>(allItems.size());
-        for (T item : allItems) {
-            if (isItemMatched(item)) {
-                result.add(item);
-            }
-        }
-        return result;
+    /**
+     * @return spans of filter query in item at position, see {@link ItemsFilter#getMatchSpans(Object)}.
+     */
+    public int[] getMatchSpans(int position) {
+        return itemsFilter != null ? itemsFilter.getMatchSpans(getItem(position)) : new int[0];
     }
 
     protected boolean isItemMatched(T item) {
@@ -78,13 +309,287 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
         }
     }
 
+    /**
+     * @return score of item for {@link ItemsFilter.RankedQuery}, bigger is better, or 0 if item doesn't match.
+     */
+    protected int getItemScore(T item) {
+        if (itemsFilter != null) {
+            return itemsFilter.getItemScore(item);
+        } else {
+            return 1;
+        }
+    }
+
     protected void filter() {
-        items.clear();
-        if (itemsFilter != null && itemsFilter.isQueryEmpty()) {
-            items.addAll(allItems);
+        filterGeneration.invalidate();
+        modificationCount++;
+        if (idIndex != null) {
+            idIndex.invalidate();
+        }
+        ItemsFilter.Query query = getFilterQuery();
+        FilterHistory.Plan plan = planFilter(query);
+        filter(allItems, itemsVersion, query, plan, items, null, 0);
+        onFiltered(plan, query, itemsVersion);
+    }
+
+    private ItemsFilter.Query getFilterQuery() {
+        return itemsFilter != null ? itemsFilter.getQuery() : null;
+    }
+
+    private FilterHistory.Plan planFilter(ItemsFilter.Query query) {
+        checkFilterVersion();
+        if (itemsFilter != null && itemsFilter.hasFacets()) {
+            return new FilterHistory.Plan();
+        }
+        return filterHistory.plan(query, itemsVersion, viewQuery, viewItemsVersion, items);
+    }
+
+    /**
+     * Drops saved results if items filter has changed how items match, like after normalizers are changed.
+     */
+    private void checkFilterVersion() {
+        if (itemsFilter != null && itemsFilter.getVersion() != historyFilterVersion) {
+            resetFilterHistory();
+            historyFilterVersion = itemsFilter.getVersion();
+        }
+    }
+
+    private void resetFilterHistory() {
+        filterHistory.clear();
+        viewQuery = null;
+        viewItemsVersion = -1;
+    }
+
+    private void onFiltered(FilterHistory.Plan plan, ItemsFilter.Query query, int sourceVersion) {
+        if (itemsFilter != null && itemsFilter.hasFacets()) {
+            resetFilterHistory();
+            return;
+        }
+        filterHistory.apply(plan, sourceVersion);
+        viewQuery = query;
+        viewItemsVersion = sourceVersion;
+        cacheMatches(query, sourceVersion);
+    }
+
+    private void cacheMatches(ItemsFilter.Query query, int sourceVersion) {
+        if (itemsFilter != null
+                && !items.isPassthrough()
+                && query instanceof ItemsFilter.CacheableQuery
+                && itemsFilter.getMatchesCacheSize() > 0
+                && itemsFilter.getCachedMatches(query, sourceVersion) == null) {
+            itemsFilter.cacheMatches(query, sourceVersion, items.toSourceBits());
+        }
+    }
+
+    /**
+     * @return false if filtering was stopped because generation is outdated.
+     */
+    private boolean filter(List<T> source, int sourceVersion, ItemsFilter.Query query, FilterHistory.Plan plan,
+                           FilteredList<T> target, Generation generation, int expectedGeneration) {
+        if (itemsFilter != null && itemsFilter.isEmpty()) {
+            target.showAll();
+            return true;
+        }
+        if (itemsFilter != null && itemsFilter.isQueryRanked()) {
+            return rank(source, target, generation, expectedGeneration, null);
+        }
+        long[] matches = itemsFilter != null ? itemsFilter.findMatches(source, sourceVersion, query, itemMatcher) : null;
+        if (matches != null) {
+            target.setSourceBits(matches);
+            return true;
+        }
+        long[] cachedMatches = itemsFilter != null ? itemsFilter.getCachedMatches(query, sourceVersion) : null;
+        if (cachedMatches != null) {
+            target.setSourceBits(cachedMatches);
+            return true;
+        }
+
+        IntArrayList candidates = new IntArrayList();
+        if (plan != null && plan.restored != null) {
+            target.setSourceIndices(plan.restored.sourceIndices);
+        } else if (plan != null && plan.base != null) {
+            return filter(source, plan.base, target, generation, expectedGeneration);
+        } else if (itemsFilter != null && itemsFilter.findCandidates(source, sourceVersion, candidates)) {
+            return filter(source, candidates.toArray(), target, generation, expectedGeneration);
         } else {
-            items.addAll(filterItems());
+            return filter(source, query, target, generation, expectedGeneration);
+        }
+        return true;
+    }
+
+    private boolean filter(List<T> source, ItemsFilter.Query query, FilteredList<T> target,
+                           Generation generation, int expectedGeneration) {
+        long[] matches = itemsFilter != null
+                ? itemsFilter.findMatchesInParallel(source, query, itemMatcher, generation, expectedGeneration)
+                : null;
+        if (matches != null) {
+            target.setSourceBits(matches);
+            return true;
+        }
+
+        matches = new long[(source.size() + 63) >>> 6];
+        int index = 0;
+        for (T item : source) {
+            if ((index & CANCELLATION_CHECK_MASK) == 0
+                    && generation != null
+                    && !generation.isCurrent(expectedGeneration)) {
+                return false;
+            }
+            if (isItemMatched(item)) {
+                matches[index >>> 6] |= 1L << index;
+            }
+            index++;
+        }
+        target.setSourceBits(matches);
+        return true;
+    }
+
+    private boolean filter(List<T> source, int[] candidates, FilteredList<T> target,
+                           Generation generation, int expectedGeneration) {
+        long[] matches = new long[(source.size() + 63) >>> 6];
+        for (int i = 0; i < candidates.length; i++) {
+            if ((i & CANCELLATION_CHECK_MASK) == 0
+                    && generation != null
+                    && !generation.isCurrent(expectedGeneration)) {
+                return false;
+            }
+            int index = candidates[i];
+            if (isItemMatched(source.get(index))) {
+                matches[index >>> 6] |= 1L << index;
+            }
+        }
+        target.setSourceBits(matches);
+        return true;
+    }
+
+    private interface RankedPreview {
+        void onPreview(int[] sourceIndices);
+    }
+
+    /**
+     * Shows matched items best first.
+     * @param preview if not null receives best items once, if scoring takes long.
+     * @return false if ranking was stopped because generation is outdated.
+     */
+    private boolean rank(List<T> source, FilteredList<T> target, Generation generation, int expectedGeneration,
+                         RankedPreview preview) {
+        RankedIndices rankedIndices = new RankedIndices(0, preview != null ? rankedPreviewSize : 0);
+        long previewTime = System.nanoTime() + RANKED_PREVIEW_DELAY_NANOS;
+        int index = 0;
+        for (T item : source) {
+            if ((index & CANCELLATION_CHECK_MASK) == 0) {
+                if (generation != null && !generation.isCurrent(expectedGeneration)) {
+                    return false;
+                }
+                if (preview != null && rankedPreviewSize > 0 && System.nanoTime() > previewTime) {
+                    preview.onPreview(rankedIndices.getTop());
+                    preview = null;
+                }
+            }
+            int score = getItemScore(item);
+            if (score > 0) {
+                rankedIndices.add(index, score);
+            }
+            index++;
         }
+        target.showRanked(rankedIndices.toSortedIndices());
+        return true;
+    }
+
+    private void filterAsync() {
+        final int generation = filterGeneration.next();
+        final int sourceVersion = itemsVersion;
+        final ItemsFilter.Query query = getFilterQuery();
+        final FilterHistory.Plan plan = planFilter(query);
+        final List<T> source = new ArrayList<>(allItems);
+        final boolean ranked = itemsFilter != null && itemsFilter.isQueryRanked();
+        final int[] expectedModificationCount = {modificationCount};
+        getDiffExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!filterGeneration.isCurrent(generation)) {
+                    return;
+                }
+
+                final FilteredList<T> filteredItems = new FilteredList<>(source);
+                boolean filtered;
+                if (ranked) {
+                    filtered = rank(source, filteredItems, filterGeneration, generation, new RankedPreview() {
+                        @Override
+                        public void onPreview(final int[] sourceIndices) {
+                            BackgroundExecutor.getMainHandler().post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (filterGeneration.isCurrent(generation)
+                                            && expectedModificationCount[0] == modificationCount) {
+                                        showRankedPreview(sourceIndices);
+                                        expectedModificationCount[0] = modificationCount;
+                                    }
+                                }
+                            });
+                        }
+                    });
+                } else {
+                    filtered = filter(source, sourceVersion, query, plan, filteredItems, filterGeneration, generation);
+                }
+                if (!filtered || !filterGeneration.isCurrent(generation)) {
+                    return;
+                }
+                final Object preparedData = prepareDataSet(filteredItems);
+                BackgroundExecutor.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!filterGeneration.isCurrent(generation)) {
+                            return;
+                        }
+                        if (expectedModificationCount[0] != modificationCount) {
+                            filterAsync();
+                            return;
+                        }
+                        globalDataSetChange = true;
+                        modificationCount++;
+                        if (idIndex != null) {
+                            idIndex.invalidate();
+                        }
+                        items.setFrom(filteredItems);
+                        items.setSource(allItems);
+                        onFiltered(plan, query, sourceVersion);
+                        onDataSetPrepared(preparedData);
+                        onDataSetChanged();
+                        notifyDataSetIfNeeded();
+                        globalDataSetChange = false;
+                    }
+                });
+            }
+        });
+    }
+
+    private void showRankedPreview(int[] sourceIndices) {
+        globalDataSetChange = true;
+        modificationCount++;
+        if (idIndex != null) {
+            idIndex.invalidate();
+        }
+        items.showRanked(sourceIndices);
+        onDataSetChanged();
+        notifyDataSetIfNeeded();
+        globalDataSetChange = false;
+    }
+
+    /**
+     * Called on a background thread in async mode with items that are going to be shown.
+     * Result is passed to {@link #onDataSetPrepared(Object)} on the main thread right before
+     * items are published.
+     */
+    protected Object prepareDataSet(List<T> items) {
+        return null;
+    }
+
+    protected void onDataSetPrepared(Object preparedData) {
+    }
+
+    private void onItemsChanged() {
+        itemsVersion = ++itemsVersionCounter;
     }
 
     public void clear() {
@@ -96,15 +601,149 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
     }
 
     public void replaceAll(Collection<T> newItems, boolean shouldResort) {
+        if (asyncMode) {
+            submitItems(newItems, shouldResort, false);
+            return;
+        }
+
+        submitGeneration.invalidate();
         globalDataSetChange = true;
         allItems.clear();
+        allItems.addAll(newItems);
+        if (shouldResort) {
+            sort(allItems);
+        }
+        onItemsChanged();
         if (itemsFilter != null) {
             itemsFilter.clearCache();
         }
-        addItems(newItems, shouldResort);
+        filter();
+        onDataSetChanged();
+        notifyDataSetIfNeeded();
         globalDataSetChange = false;
     }
 
+    /**
+     * Replaces all items like {@link #replaceAll(Collection)} but sorts, filters and diffs new items
+     * against the current ones on {@link #getDiffExecutor()}. Changes are dispatched on the main thread
+     * as granular notifications. Result of the previous call is discarded if it isn't applied yet,
+     * as well as after {@link #replaceAll(Collection)}. Filter and comparator are called on the executor thread.
+     */
+    public void submitItems(Collection<T> newItems) {
+        submitItems(newItems, true, true);
+    }
+
+    private void submitItems(Collection<T> newItems, final boolean shouldResort, final boolean calculateDiff) {
+        final int generation = submitGeneration.next();
+        filterGeneration.invalidate();
+        final int modificationCountAtStart = modificationCount;
+        final int newItemsVersion = ++itemsVersionCounter;
+        final List<T> oldItems = calculateDiff ? new ArrayList<>(items) : null;
+        final List<T> newAllItems = new ArrayList<>(newItems);
+        final ItemsFilter.Query query = getFilterQuery();
+        if (itemsFilter != null) {
+            itemsFilter.clearCache();
+        }
+        getDiffExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!submitGeneration.isCurrent(generation)) {
+                    return;
+                }
+
+                if (shouldResort) {
+                    sort(newAllItems);
+                }
+                final FilteredList<T> filteredItems = new FilteredList<>(newAllItems);
+                if (!filter(newAllItems, newItemsVersion, query, null, filteredItems, submitGeneration, generation)
+                        || !submitGeneration.isCurrent(generation)) {
+                    return;
+                }
+                final Object preparedData = prepareDataSet(filteredItems);
+
+                DiffUtil.DiffResult diffResult = null;
+                if (calculateDiff
+                        && submitGeneration.isCurrent(generation)
+                        && isDiffSizeAcceptable(oldItems, filteredItems)) {
+                    diffResult = DiffUtil.calculateDiff(new ItemsDiffCallback(oldItems, filteredItems), true);
+                }
+
+                final DiffUtil.DiffResult result = diffResult;
+                BackgroundExecutor.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!submitGeneration.isCurrent(generation)) {
+                            return;
+                        }
+                        if (modificationCountAtStart == modificationCount) {
+                            onDataSetPrepared(preparedData);
+                            applySubmittedItems(newAllItems, newItemsVersion, filteredItems, result);
+                        } else {
+                            applySubmittedItems(newAllItems, newItemsVersion, null, null);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void applySubmittedItems(List<T> newAllItems, int newItemsVersion, FilteredList<T> newFilteredItems,
+                                     DiffUtil.DiffResult diffResult) {
+        allItems = indexedStorage ? createItemsList(newAllItems) : newAllItems;
+        itemsVersion = newItemsVersion;
+        if (newFilteredItems != null) {
+            modificationCount++;
+            if (idIndex != null) {
+                idIndex.invalidate();
+            }
+            items.setFrom(newFilteredItems);
+            items.setSource(allItems);
+            resetFilterHistory();
+        } else {
+            items.setSource(allItems);
+            filter();
+        }
+
+        onDataSetChanged();
+        if (diffResult != null && notifyOnChange) {
+            ItemUpdates updates = new ItemUpdates();
+            diffResult.dispatchUpdatesTo(updates);
+            dispatchUpdates(updates);
+        } else {
+            notifyDataSetIfNeeded();
+        }
+    }
+
+    private boolean isDiffSizeAcceptable(List<T> oldItems, List<T> newItems) {
+        if (maxDiffSize < 0) {
+            return true;
+        }
+        if (Math.abs(oldItems.size() - newItems.size()) > maxDiffSize) {
+            return false;
+        }
+
+        LongIntMap oldIds = new LongIntMap(oldItems.size());
+        for (T item : oldItems) {
+            oldIds.put(getItemId(item), 0);
+        }
+        int inserted = 0;
+        for (T item : newItems) {
+            if (!oldIds.containsKey(getItemId(item))) {
+                inserted++;
+            }
+        }
+        int removed = oldItems.size() - (newItems.size() - inserted);
+        return inserted + removed <= maxDiffSize;
+    }
+
+    /**
+     * Used by {@link #submitItems(Collection)} to find items with the same {@link #getItemId(Object)} that
+     * should be rebound.
+     */
+    protected boolean areItemContentsTheSame(T oldItem, T newItem) {
+        return oldItem == newItem || (oldItem != null && oldItem.equals(newItem));
+    }
+
     public void addItem(T item) {
         addItems(Collections.singletonList(item));
     }
@@ -114,62 +753,354 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
     }
 
     public void addItems(Collection<T> items, boolean shouldResort) {
-        allItems.addAll(items);
-        if (shouldResort) {
-            sort(allItems);
+        if (shouldResort
+                && detectSortedItems
+                && getStorageComparator() != null
+                && SortedLists.isSorted(items, getStorageComparator())
+                && mergeSortedItems(items)) {
+            return;
+        }
+        addAndSortItems(items, shouldResort);
+    }
+
+    /**
+     * Adds items that are already sorted by items comparator. Items are merged into
+     * sorted items and filtered items in O(n + m) without resorting.
+     */
+    public void addSortedItems(Collection<T> sortedItems) {
+        if (!mergeSortedItems(sortedItems)) {
+            addAndSortItems(sortedItems, true);
+        }
+    }
+
+    private boolean mergeSortedItems(Collection<T> sortedItems) {
+        Comparator<? super T> comparator = getStorageComparator();
+        if (comparator == null
+                || allItems.isEmpty()
+                || sortedItems.isEmpty()
+                || canInsertSorted(sortedItems.size())) {
+            return false;
+        }
+
+        IntArrayList insertedIndices = new IntArrayList(sortedItems.size());
+        List<T> mergedAllItems = SortedLists.merge(allItems, sortedItems, comparator, insertedIndices);
+        if (mergedAllItems == null) {
+            return false;
+        }
+
+        boolean[] visible = new boolean[sortedItems.size()];
+        int i = 0;
+        for (T item : sortedItems) {
+            visible[i++] = isItemMatched(item);
+        }
+
+        allItems = indexedStorage ? createItemsList(mergedAllItems) : mergedAllItems;
+        onItemsChanged();
+        items.setSource(allItems);
+        IntArrayList newPositions = new IntArrayList(sortedItems.size());
+        items.onSourceInserted(insertedIndices.toArray(), visible, newPositions);
+        modificationCount++;
+        if (idIndex != null) {
+            idIndex.onInserted(items, newPositions.toArray());
+        }
+
+        onItemPositionsInserted(newPositions.toArray());
+        onDataSetChanged();
+        if (!globalDataSetChange && notifyOnChange) {
+            notifyItemRangesInserted(newPositions.toArray());
+        } else {
+            notifyDataSetIfNeeded();
+        }
+        return true;
+    }
+
+    private void addAndSortItems(Collection<T> items, boolean shouldResort) {
+        if (shouldResort && canInsertSorted(items.size())) {
+            modificationCount++;
+            insertSorted(items);
+        } else if (!shouldResort && !items.isEmpty()) {
+            appendItems(items);
+        } else {
+            allItems.addAll(items);
+            if (shouldResort) {
+                sort(allItems);
+            }
+            onItemsChanged();
+            filter();
         }
-        filter();
 
         onDataSetChanged();
         if (!globalDataSetChange && notifyOnChange) {
             int[] newPositions = new int[items.size()];
             int pos = 0;
             for (T item : items) {
-                newPositions[pos++] = getIndexOf(item);
+                newPositions[pos++] = getItemPosition(item);
             }
             Arrays.sort(newPositions);
-            int prevPosition = -1;
-            int startFrom = -1;
-            int count = 0;
-            for (int cur : newPositions) {
-                if (cur >= 0) {
-                    if (startFrom == -1) {
-                        startFrom = cur;
-                    } else if (cur - prevPosition > 1) {
-                        count = 0;
-                        break;
-                    }
-                    count++;
-                    prevPosition = cur;
+            notifyItemRangesInserted(newPositions);
+        } else {
+            notifyDataSetIfNeeded();
+        }
+    }
+
+    /**
+     * Adds items to the end and filters only them.
+     */
+    private void appendItems(Collection<T> newItems) {
+        int start = allItems.size();
+        allItems.addAll(newItems);
+        onItemsChanged();
+
+        int[] insertedIndices = new int[allItems.size() - start];
+        boolean[] visible = new boolean[insertedIndices.length];
+        int i = 0;
+        for (T item : newItems) {
+            insertedIndices[i] = start + i;
+            visible[i] = isItemMatched(item);
+            i++;
+        }
+        IntArrayList newPositions = new IntArrayList(insertedIndices.length);
+        items.onSourceInserted(insertedIndices, visible, newPositions);
+        modificationCount++;
+        if (idIndex != null) {
+            idIndex.onInserted(items, newPositions.toArray());
+        }
+        onItemPositionsInserted(newPositions.toArray());
+    }
+
+    /**
+     * Reports every contiguous run of sorted positions with {@link #onItemRangeInserted(int, int)}.
+     */
+    private void onItemPositionsInserted(int[] sortedPositions) {
+        int rangeStart = -1;
+        int count = 0;
+        for (int position : sortedPositions) {
+            if (rangeStart >= 0 && position == rangeStart + count) {
+                count++;
+            } else {
+                if (count > 0) {
+                    onItemRangeInserted(rangeStart, count);
                 }
+                rangeStart = position;
+                count = 1;
             }
-            if (count > 0) {
-                notifyItemRangeInserted(startFrom, count);
-            } else {
+        }
+        if (count > 0) {
+            onItemRangeInserted(rangeStart, count);
+        }
+    }
+
+    /**
+     * Notifies insertion of every contiguous run of sorted positions. Each run is notified at its final
+     * position, that is correct as runs before it are already notified.
+     */
+    private void notifyItemRangesInserted(int[] sortedPositions) {
+        ItemUpdates updates = new ItemUpdates();
+        int rangeStart = -1;
+        int count = 0;
+        for (int position : sortedPositions) {
+            if (position < 0) {
+                continue;
+            }
+            if (rangeStart >= 0 && position <= rangeStart + count - 1) {
                 notifyDataSetChanged();
+                return;
+            }
+            if (rangeStart >= 0 && position == rangeStart + count) {
+                count++;
+            } else {
+                if (count > 0) {
+                    updates.onInserted(rangeStart, count);
+                }
+                rangeStart = position;
+                count = 1;
             }
-        } else {
-            notifyDataSetIfNeeded();
         }
+        if (count > 0) {
+            updates.onInserted(rangeStart, count);
+        }
+        dispatchUpdates(updates);
     }
 
     public void removeItem(T item) {
-        int index = allItems.indexOf(item);
+        int index = getSourceIndex(item);
         if (index >= 0) {
-            allItems.remove(item);
-            filter();
+            allItems.remove(index);
+            onItemsChanged();
+            int position = items.onSourceRemoved(index);
+            if (position >= 0) {
+                if (idIndex != null) {
+                    idIndex.onRemoved(item, position);
+                }
+                onItemRangeRemoved(position, 1);
+            }
+            modificationCount++;
             onDataSetChanged();
             if (!globalDataSetChange && notifyOnChange) {
-                notifyItemRemoved(index);
+                if (position >= 0) {
+                    ItemUpdates updates = new ItemUpdates();
+                    updates.onRemoved(position, 1);
+                    dispatchUpdates(updates);
+                }
             } else {
                 notifyDataSetIfNeeded();
             }
         }
     }
 
+    public void updateItem(T oldItem, T newItem) {
+        updateItem(oldItem, newItem, null);
+    }
+
+    /**
+     * Replaces oldItem with newItem in place. If sort order of the item has changed it's moved with a binary
+     * search. Visible changes are notified with {@link #notifyItemChanged(int, Object)} with payload,
+     * {@link #notifyItemMoved(int, int)}, {@link #notifyItemInserted(int)} or {@link #notifyItemRemoved(int)}
+     * if the item now passes or fails the filter. Does nothing if oldItem isn't in adapter.
+     */
+    public void updateItem(T oldItem, T newItem, Object payload) {
+        int index = getSourceIndex(oldItem);
+        if (index < 0) {
+            return;
+        }
+
+        int oldItemsVersion = itemsVersion;
+        int oldPosition = items.onSourceRemoved(index);
+        int newIndex = setSorted(allItems, index, newItem, getStorageComparator());
+        onItemsChanged();
+        if (itemsFilter != null) {
+            if (newIndex == index) {
+                itemsFilter.onItemReplaced(index, oldItem, newItem, oldItemsVersion, itemsVersion);
+            } else {
+                itemsFilter.clearCache(oldItem);
+            }
+        }
+        int newPosition = items.onSourceInserted(newIndex, isItemMatched(newItem));
+        modificationCount++;
+        if (idIndex != null
+                && (oldPosition != newPosition || getItemId(oldItem) != getItemId(newItem))) {
+            if (oldPosition >= 0) {
+                idIndex.onRemoved(oldItem, oldPosition);
+            }
+            if (newPosition >= 0) {
+                idIndex.onInserted(items, newPosition);
+            }
+        }
+        if (oldPosition >= 0) {
+            onItemRangeRemoved(oldPosition, 1);
+        }
+        if (newPosition >= 0) {
+            onItemRangeInserted(newPosition, 1);
+        }
+
+        onDataSetChanged();
+        if (!globalDataSetChange && notifyOnChange) {
+            ItemUpdates updates = new ItemUpdates();
+            if (oldPosition >= 0 && newPosition >= 0) {
+                if (oldPosition != newPosition) {
+                    updates.onMoved(oldPosition, newPosition);
+                }
+                updates.onChanged(newPosition, 1, payload);
+            } else if (oldPosition >= 0) {
+                updates.onRemoved(oldPosition, 1);
+            } else if (newPosition >= 0) {
+                updates.onInserted(newPosition, 1);
+            }
+            dispatchUpdates(updates);
+        } else {
+            notifyDataSetIfNeeded();
+        }
+    }
+
+    /**
+     * Sets item at index or moves it to keep list sorted.
+     * @return new index of item.
+     */
+    private int setSorted(List<T> list, int index, T item, Comparator<? super T> comparator) {
+        if (comparator == null || SortedLists.canReplace(list, index, item, comparator)) {
+            list.set(index, item);
+            return index;
+        }
+        list.remove(index);
+        return SortedLists.addSorted(list, item, comparator);
+    }
+
+    /**
+     * Removes items in O(n + m) and notifies removal of every contiguous range of visible items.
+     * With {@link #setIndexedStorage(boolean)} items are removed in place in O(log n) each.
+     */
+    public void removeItems(Collection<T> itemsToRemove) {
+        if (itemsToRemove.isEmpty()) {
+            return;
+        }
+
+        Set<T> removeSet = itemsToRemove instanceof Set ? (Set<T>) itemsToRemove : new HashSet<>(itemsToRemove);
+        boolean[] removed = new boolean[allItems.size()];
+        int removedItemsCount = 0;
+        if (indexedStorage) {
+            Iterator<T> iterator = allItems.iterator();
+            for (int index = 0; iterator.hasNext(); index++) {
+                if (removeSet.contains(iterator.next())) {
+                    iterator.remove();
+                    removed[index] = true;
+                    removedItemsCount++;
+                }
+            }
+        } else {
+            List<T> keptItems = new ArrayList<>(allItems.size());
+            int index = 0;
+            for (T item : allItems) {
+                if (removeSet.contains(item)) {
+                    removed[index] = true;
+                } else {
+                    keptItems.add(item);
+                }
+                index++;
+            }
+            removedItemsCount = allItems.size() - keptItems.size();
+            if (removedItemsCount > 0) {
+                allItems.clear();
+                allItems.addAll(keptItems);
+            }
+        }
+        if (removedItemsCount == 0) {
+            return;
+        }
+
+        onItemsChanged();
+        IntArrayList removedRanges = new IntArrayList();
+        items.onSourceRemoved(removed, removedRanges);
+        modificationCount++;
+        if (idIndex != null) {
+            idIndex.invalidate();
+        }
+        int removedBefore = 0;
+        for (int i = 0; i < removedRanges.size(); i += 2) {
+            int count = removedRanges.get(i + 1);
+            onItemRangeRemoved(removedRanges.get(i) - removedBefore, count);
+            removedBefore += count;
+        }
+
+        onDataSetChanged();
+        if (!globalDataSetChange && notifyOnChange) {
+            ItemUpdates updates = new ItemUpdates();
+            int removedCount = 0;
+            for (int i = 0; i < removedRanges.size(); i += 2) {
+                int count = removedRanges.get(i + 1);
+                updates.onRemoved(removedRanges.get(i) - removedCount, count);
+                removedCount += count;
+            }
+            dispatchUpdates(updates);
+        } else {
+            notifyDataSetIfNeeded();
+        }
+    }
+
     @SuppressWarnings({"rawtypes"})
     protected void sort(List items) {
-        if (itemsComparator != null) {
+        if (items instanceof SortedTreeList) {
+            ((SortedTreeList) items).sort();
+        } else if (itemsComparator != null) {
             Collections.sort(items, itemsComparator);
         } else if (comparable) {
             Collections.sort(items);
@@ -177,13 +1108,47 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
     }
 
     public int getIndexOf(T item) {
+        return getItemPosition(item);
+    }
+
+    private int getItemPosition(T item) {
+        if (idIndex != null) {
+            return idIndex.getPosition(items, item);
+        }
         return items.indexOf(item);
     }
 
+    /**
+     * @return index of item in all items. Visible items are found with id index if it's enabled.
+     */
+    private int getSourceIndex(T item) {
+        if (idIndex != null) {
+            int position = idIndex.getPosition(items, item);
+            if (position >= 0) {
+                return items.getSourceIndex(position);
+            }
+        }
+        return allItems.indexOf(item);
+    }
+
     public List<T> getReadOnlyItems() {
         return readOnlyItems;
     }
 
+    /**
+     * Called before {@link #onDataSetChanged()} when items were inserted at positions of filtered items.
+     * Ranges of one change are reported in order, each at positions after the previous ones are applied.
+     */
+    protected void onItemRangeInserted(int position, int count) {
+    }
+
+    /**
+     * Called before {@link #onDataSetChanged()} when items were removed from positions of filtered items.
+     * Ranges of one change are reported in order, each at positions after the previous ones are applied.
+     */
+    protected void onItemRangeRemoved(int position, int count) {
+    }
+
     protected void onDataSetChanged() {
 
     }
@@ -194,6 +1159,14 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
         }
     }
 
+    /**
+     * Notifies about updates of one change, called after {@link #onDataSetChanged()}. Updates use
+     * positions of filtered items, override to translate them for adapters with extra rows.
+     */
+    protected void dispatchUpdates(ItemUpdates updates) {
+        updates.dispatchTo(new AdapterListUpdateCallback(this));
+    }
+
     @Override
     public int getViewTypeCount() {
         return 1;
@@ -223,4 +1196,42 @@ public abstract class RecyclerAdapter<T, VH extends RecyclerView.ViewHolder> ext
 
     public abstract long getItemId(T item);
 
+    private class ItemsDiffCallback extends DiffUtil.Callback {
+        private final List<T> oldItems;
+        private final List<T> newItems;
+
+        ItemsDiffCallback(List<T> oldItems, List<T> newItems) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return getItemId(oldItems.get(oldItemPosition)) == getItemId(newItems.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return areItemContentsTheSame(oldItems.get(oldItemPosition), newItems.get(newItemPosition));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            return ((Comparable) lhs).compareTo(rhs);
+        }
+    };
+
 }
@@ -7,9 +7,16 @@ import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.shaubert.ui.adapters.common.AdapterItemIds;
+import com.shaubert.ui.adapters.common.ItemUpdates;
+import com.shaubert.ui.adapters.common.SectionPositions;
+import com.shaubert.ui.adapters.common.SectionUpdates;
+
+import java.util.Collection;
+import java.util.List;
 
 public abstract class RecyclerSectionAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerAdapter<T, RecyclerView.ViewHolder> implements SectionIndexer {
 
@@ -38,6 +45,10 @@ public abstract class RecyclerSectionAdapter<T, VH extends RecyclerView.ViewHold
     private ExtendedSectionIndexer sectionIndexer;
     private boolean showSectionForEmptyList;
     private int sectionLayoutResId = -1;
+    private final SectionPositions sectionPositions = new SectionPositions();
+    private SectionPositions previousSectionPositions;
+    private boolean sectionsChanged;
+    private Object preparedSections;
 
     protected RecyclerSectionAdapter() {
         setHasStableIds(true);
@@ -45,6 +56,7 @@ public abstract class RecyclerSectionAdapter<T, VH extends RecyclerView.ViewHold
 
     public void setSectionIndexer(ExtendedSectionIndexer sectionIndexer) {
         this.sectionIndexer = sectionIndexer;
+        sectionPositions.invalidate();
     }
 
     public ExtendedSectionIndexer getSectionIndexer() {
@@ -71,42 +83,126 @@ public abstract class RecyclerSectionAdapter<T, VH extends RecyclerView.ViewHold
         return showSectionForEmptyList;
     }
 
+    @Override
+    protected Object prepareDataSet(List<T> items) {
+        ExtendedSectionIndexer indexer = sectionIndexer;
+        if (indexer instanceof AsyncSectionIndexer) {
+            //noinspection unchecked
+            return ((AsyncSectionIndexer<T>) indexer).computeSections(items);
+        }
+        return null;
+    }
+
+    @Override
+    protected void onDataSetPrepared(Object preparedData) {
+        preparedSections = preparedData;
+    }
+
+    @Override
+    protected void onItemRangeInserted(int position, int count) {
+        if (sectionIndexer instanceof IncrementalSectionIndexer) {
+            ((IncrementalSectionIndexer) sectionIndexer).onItemsInserted(position, count);
+            sectionsChanged = true;
+        }
+    }
+
+    @Override
+    protected void onItemRangeRemoved(int position, int count) {
+        if (sectionIndexer instanceof IncrementalSectionIndexer) {
+            ((IncrementalSectionIndexer) sectionIndexer).onItemsRemoved(position, count);
+            sectionsChanged = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void updateItem(T oldItem, T newItem, Object payload) {
+        if (sectionIndexer instanceof IncrementalSectionIndexer) {
+            ((IncrementalSectionIndexer<T>) sectionIndexer).invalidateSection(oldItem);
+            ((IncrementalSectionIndexer<T>) sectionIndexer).invalidateSection(newItem);
+        }
+        super.updateItem(oldItem, newItem, payload);
+    }
+
     @Override
     protected void onDataSetChanged() {
-        refreshSections();
+        previousSectionPositions = getSectionPositions().copy();
+        if (preparedSections != null && sectionIndexer instanceof AsyncSectionIndexer) {
+            ((AsyncSectionIndexer) sectionIndexer).applySections(preparedSections);
+            sectionPositions.update(sectionIndexer);
+        } else if (sectionsChanged) {
+            refreshChangedSections();
+        } else {
+            refreshSections();
+        }
+        preparedSections = null;
+        sectionsChanged = false;
         super.onDataSetChanged();
     }
 
+    /**
+     * Translates updates of items to rows with headers, so headers are inserted and removed along with
+     * their sections and headers of unchanged sections are left alone.
+     */
+    @Override
+    protected void dispatchUpdates(ItemUpdates updates) {
+        SectionUpdates sectionUpdates = new SectionUpdates();
+        updates.dispatchTo(sectionUpdates);
+        sectionUpdates.dispatchTo(previousSectionPositions, getSectionPositions(), super.getItemCount(),
+                new AdapterListUpdateCallback(this));
+    }
+
+    /**
+     * Replaces all items and forgets sections memoized by {@link SimpleIndexer}.
+     */
+    @Override
+    public void replaceAll(Collection<T> newItems, boolean shouldResort) {
+        if (sectionIndexer instanceof SimpleIndexer) {
+            ((SimpleIndexer) sectionIndexer).clearSectionsCache();
+        }
+        super.replaceAll(newItems, shouldResort);
+    }
+
     public boolean isLastInSection(int position) {
         return sectionIndexer.isSectionEnd(position);
     }
 
+    /**
+     * @return spans of filter query in item at position or empty spans for section header.
+     */
+    @Override
+    public int[] getMatchSpans(int position) {
+        return sectionIndexer.isSectionStart(position) ? new int[0] : super.getMatchSpans(position);
+    }
+
+    /**
+     * @return adapter position of item or -1. With {@link #setIdIndexEnabled(boolean)} item is found without
+     * scanning items.
+     */
     @Override
     public int getIndexOf(T item) {
-        int count = getItemCount();
-        for (int i = 0; i < count; i++) {
-            if (!sectionIndexer.isSectionStart(i)) {
-                if (getInternalItem(i) == item) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return getSectionPositions().toAdapterPosition(super.getIndexOf(item));
     }
 
     private void refreshSections() {
         sectionIndexer.refreshSections();
+        sectionPositions.update(sectionIndexer);
     }
 
-    public int getSectionsCountBeforePosition(int position) {
-        int count = 0;
-        for (int i = 0; i < getSections().length; i++) {
-            if (getPositionForSection(i) > position) {
-                break;
-            }
-            count++;
+    private void refreshChangedSections() {
+        ((IncrementalSectionIndexer) sectionIndexer).refreshChangedSections();
+        sectionPositions.update(sectionIndexer);
+    }
+
+    private SectionPositions getSectionPositions() {
+        if (!sectionPositions.isBuiltFor(getSections())) {
+            sectionPositions.update(sectionIndexer);
         }
-        return count;
+        return sectionPositions;
+    }
+
+    public int getSectionsCountBeforePosition(int position) {
+        return getSectionPositions().getSectionsCountBefore(position);
     }
 
     @Override
@@ -153,7 +249,7 @@ public abstract class RecyclerSectionAdapter<T, VH extends RecyclerView.ViewHold
     private Object getInternalItem(int position) {
         return sectionIndexer.isSectionStart(position)
                 ? getSections()[getSectionForPosition(position)]
-                        : super.getItem(position - getSectionsCountBeforePosition(position));
+                        : super.getItem(getSectionPositions().toItemPosition(position));
     }
 
     public boolean isSectionHeader(int position) {
@@ -6,6 +6,9 @@ import android.view.ViewGroup;
 import android.widget.SectionIndexer;
 import android.widget.TextView;
 import com.shaubert.ui.adapters.common.AdapterItemIds;
+import com.shaubert.ui.adapters.common.SectionPositions;
+
+import java.util.Collection;
 
 public abstract class SectionListAdapter<T> extends ListAdapter<T> implements SectionIndexer {
 
@@ -15,9 +18,12 @@ public abstract class SectionListAdapter<T> extends ListAdapter<T> implements Se
     private ExtendedSectionIndexer sectionIndexer;
     private boolean showSectionForEmptyList;
     private int sectionLayoutResId = -1;
+    private final SectionPositions sectionPositions = new SectionPositions();
+    private boolean sectionsChanged;
 
     public void setSectionIndexer(ExtendedSectionIndexer sectionIndexer) {
         this.sectionIndexer = sectionIndexer;
+        sectionPositions.invalidate();
     }
 
     public ExtendedSectionIndexer getSectionIndexer() {
@@ -44,42 +50,80 @@ public abstract class SectionListAdapter<T> extends ListAdapter<T> implements Se
         this.sectionLayoutResId = sectionLayoutResId;
     }
 
+    @Override
+    protected void onItemRangeInserted(int position, int count) {
+        if (sectionIndexer instanceof IncrementalSectionIndexer) {
+            ((IncrementalSectionIndexer) sectionIndexer).onItemsInserted(position, count);
+            sectionsChanged = true;
+        }
+    }
+
+    @Override
+    protected void onItemRangeRemoved(int position, int count) {
+        if (sectionIndexer instanceof IncrementalSectionIndexer) {
+            ((IncrementalSectionIndexer) sectionIndexer).onItemsRemoved(position, count);
+            sectionsChanged = true;
+        }
+    }
+
     @Override
     protected void onDatasetChanged() {
-        refreshSections();
+        if (sectionsChanged) {
+            refreshChangedSections();
+        } else {
+            refreshSections();
+        }
+        sectionsChanged = false;
         super.onDatasetChanged();
     }
 
+    /**
+     * Replaces all items and forgets sections memoized by {@link SimpleIndexer}.
+     */
+    @Override
+    public void replaceAll(Collection<T> newItems, boolean shouldResort) {
+        if (sectionIndexer instanceof SimpleIndexer) {
+            ((SimpleIndexer) sectionIndexer).clearSectionsCache();
+        }
+        super.replaceAll(newItems, shouldResort);
+    }
+
     public boolean isLastInSection(int position) {
         return sectionIndexer.isSectionEnd(position);
     }
 
+    /**
+     * @return spans of filter query in item at position or empty spans for section header.
+     */
+    @Override
+    public int[] getMatchSpans(int position) {
+        return sectionIndexer.isSectionStart(position) ? new int[0] : super.getMatchSpans(position);
+    }
+
     @Override
     public int getIndexOf(T item) {
-        int count = getCount();
-        for (int i = 0; i < count; i++) {
-            if (!sectionIndexer.isSectionStart(i)) {
-                if (getItem(i) == item) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return getSectionPositions().toAdapterPosition(super.getIndexOf(item));
     }
 
     private void refreshSections() {
         sectionIndexer.refreshSections();
+        sectionPositions.update(sectionIndexer);
     }
 
-    public int getSectionsCountBeforePosition(int position) {
-        int count = 0;
-        for (int i = 0; i < getSections().length; i++) {
-            if (getPositionForSection(i) > position) {
-                break;
-            }
-            count++;
+    private void refreshChangedSections() {
+        ((IncrementalSectionIndexer) sectionIndexer).refreshChangedSections();
+        sectionPositions.update(sectionIndexer);
+    }
+
+    private SectionPositions getSectionPositions() {
+        if (!sectionPositions.isBuiltFor(getSections())) {
+            sectionPositions.update(sectionIndexer);
         }
-        return count;
+        return sectionPositions;
+    }
+
+    public int getSectionsCountBeforePosition(int position) {
+        return getSectionPositions().getSectionsCountBefore(position);
     }
 
     @Override
@@ -124,7 +168,7 @@ public abstract class SectionListAdapter<T> extends ListAdapter<T> implements Se
     private Object getInternalItem(int position) {
         return sectionIndexer.isSectionStart(position)
                 ? getSections()[getSectionForPosition(position)]
-                        : super.getItem(position - getSectionsCountBeforePosition(position));
+                        : super.getItem(getSectionPositions().toItemPosition(position));
     }
 
     @Override
@@ -1,12 +1,36 @@
 package com.shaubert.ui.adapters;
 
+import com.shaubert.ui.adapters.common.IntArrayList;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 
-public class SimpleIndexer<T> implements ExtendedSectionIndexer {
+/**
+ * Computes sections with {@link SectionRetriever}. With {@link #setMemoizeSections(boolean)} section of every
+ * item is computed once and memoized by item identity.
+ */
+public class SimpleIndexer<T> implements AsyncSectionIndexer<T>, IncrementalSectionIndexer<T> {
+
+    private static final long[] NO_HEADERS = new long[0];
+    private static final Object NO_SECTION = new Object();
 
     private Object[] sections = new Object[0];
-    private Integer[] sectionPositions = new Integer[0];
+    private int[] sectionPositions = new int[0];
+    private long[] headers = NO_HEADERS;
+    private boolean emptyListSection;
+
+    private final Object sectionKeysLock = new Object();
+    private IdentityHashMap<Object, Object> sectionKeys = new IdentityHashMap<>();
+    private volatile boolean memoizeSections;
+
+    private int[] changedStarts;
+    private Object[] changedSections;
+    private int changedCount;
+    private int changedFrom;
+    private int changedTo;
+    private boolean fullRefreshNeeded;
 
     private SectionRetriever<T> sectionRetriever;
     private ItemsAdapter<T> adapter;
@@ -34,15 +58,49 @@ public class SimpleIndexer<T> implements ExtendedSectionIndexer {
 
     @Override
     public void refreshSections() {
-        List<T> readOnlyItems = adapter.getItemsWithoutSections();
-        if (!readOnlyItems.isEmpty() || !adapter.isShowSectionForEmptyList()) {
-            int size = readOnlyItems.size();
-            ArrayList<Integer> positions = new ArrayList<Integer>(size);
+        applySections(computeSections(adapter.getItemsWithoutSections()));
+    }
+
+    /**
+     * If enabled section of every item is computed once and memoized by item identity. Items reported with
+     * {@link #onItemsInserted(int, int)} or {@link #invalidateSection(Object)} get new sections, call
+     * {@link #clearSectionsCache()} if sections of other items can change. Disabled by default.
+     */
+    public void setMemoizeSections(boolean memoizeSections) {
+        this.memoizeSections = memoizeSections;
+        if (!memoizeSections) {
+            clearSectionsCache();
+        }
+    }
+
+    public boolean isMemoizeSections() {
+        return memoizeSections;
+    }
+
+    /**
+     * Forgets memoized sections of all items.
+     */
+    public void clearSectionsCache() {
+        synchronized (sectionKeysLock) {
+            sectionKeys = new IdentityHashMap<>();
+        }
+    }
+
+    @Override
+    public Object computeSections(List<T> items) {
+        if (!items.isEmpty() || !adapter.isShowSectionForEmptyList()) {
+            int size = items.size();
+            IntArrayList positions = new IntArrayList(size);
             ArrayList<Object> sections = new ArrayList<Object>(size);
+            IdentityHashMap<Object, Object> keys = memoizeSections ? new IdentityHashMap<>(size) : null;
             int pos = 0;
             Object prevSection = null;
-            for (T item : readOnlyItems) {
-                Object section = sectionRetriever.getSectionFrom(item);
+            for (T item : items) {
+                Object key = getSectionKey(item, false);
+                if (keys != null) {
+                    keys.put(item, key);
+                }
+                Object section = key != NO_SECTION ? key : null;
                 if (section != null
                         && (prevSection == null || !prevSection.equals(section))) {
                     prevSection = section;
@@ -53,14 +111,195 @@ public class SimpleIndexer<T> implements ExtendedSectionIndexer {
                 }
                 pos++;
             }
-            this.sections = sections.toArray(new Object[sections.size()]);
-            this.sectionPositions = positions.toArray(new Integer[sections.size()]);
+            return new Sections(sections.toArray(new Object[sections.size()]), positions.toArray(),
+                    keys != null ? keys : new IdentityHashMap<>(), false);
         } else {
-            this.sections = new Object[]{sectionRetriever.getSectionFrom(null)};
-            this.sectionPositions = new Integer[]{0};
+            return new Sections(new Object[]{sectionRetriever.getSectionFrom(null)}, new int[]{0},
+                    new IdentityHashMap<>(), true);
         }
     }
 
+    @Override
+    public void applySections(Object sections) {
+        Sections result = (Sections) sections;
+        this.sections = result.sections;
+        this.sectionPositions = result.positions;
+        this.headers = result.headers;
+        this.emptyListSection = result.emptyListSection;
+        if (result.keys != null) {
+            synchronized (sectionKeysLock) {
+                sectionKeys = result.keys;
+            }
+        }
+        changedStarts = null;
+        changedSections = null;
+        fullRefreshNeeded = false;
+    }
+
+    @Override
+    public void onItemsInserted(int position, int count) {
+        if (!startChange()) {
+            return;
+        }
+        for (int i = 0; i < changedCount; i++) {
+            if (changedStarts[i] >= position) {
+                changedStarts[i] += count;
+            }
+        }
+        changedFrom = Math.min(changedFrom, position);
+        changedTo = Math.max(changedTo > position ? changedTo + count : changedTo, position + count);
+    }
+
+    @Override
+    public void onItemsRemoved(int position, int count) {
+        if (!startChange()) {
+            return;
+        }
+        int size = 0;
+        for (int i = 0; i < changedCount; i++) {
+            int start = changedStarts[i];
+            if (start < position || start >= position + count) {
+                changedStarts[size] = start < position ? start : start - count;
+                changedSections[size] = changedSections[i];
+                size++;
+            }
+        }
+        Arrays.fill(changedSections, size, changedCount, null);
+        changedCount = size;
+        changedFrom = Math.min(changedFrom, position);
+        changedTo = Math.max(changedTo <= position ? changedTo : Math.max(position, changedTo - count), position);
+    }
+
+    /**
+     * Copies sections to item positions on the first change.
+     * @return false if all sections should be computed again.
+     */
+    private boolean startChange() {
+        if (fullRefreshNeeded) {
+            return false;
+        }
+        if (emptyListSection) {
+            fullRefreshNeeded = true;
+            return false;
+        }
+        if (changedStarts == null) {
+            changedCount = sections.length;
+            changedStarts = new int[changedCount];
+            for (int i = 0; i < changedCount; i++) {
+                changedStarts[i] = sectionPositions[i] - i;
+            }
+            changedSections = Arrays.copyOf(sections, changedCount);
+            changedFrom = Integer.MAX_VALUE;
+            changedTo = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void invalidateSection(T item) {
+        synchronized (sectionKeysLock) {
+            sectionKeys.remove(item);
+        }
+    }
+
+    /**
+     * Computes sections of changed items and of items up to the first unchanged one with a section,
+     * all sections after it stay the same.
+     */
+    @Override
+    public void refreshChangedSections() {
+        if (fullRefreshNeeded) {
+            refreshSections();
+            return;
+        }
+        if (changedStarts == null) {
+            return;
+        }
+        List<T> items = adapter.getItemsWithoutSections();
+        int size = items.size();
+        if (size == 0 && adapter.isShowSectionForEmptyList()) {
+            refreshSections();
+            return;
+        }
+
+        int from = Math.min(changedFrom, size);
+        int to = Math.min(changedTo, size);
+        int first = lowerBound(changedStarts, changedCount, from);
+        Object prevSection = first > 0 ? changedSections[first - 1] : null;
+        IntArrayList starts = new IntArrayList();
+        ArrayList<Object> sections = new ArrayList<>();
+        int end = from;
+        while (end < size) {
+            T item = items.get(end++);
+            Object key = getSectionKey(item, end <= to);
+            if (memoizeSections) {
+                synchronized (sectionKeysLock) {
+                    sectionKeys.put(item, key);
+                }
+            }
+            if (key != NO_SECTION) {
+                if (prevSection == null || !prevSection.equals(key)) {
+                    starts.add(end - 1);
+                    sections.add(key);
+                }
+                prevSection = key;
+                if (end > to) {
+                    break;
+                }
+            }
+        }
+        int last = lowerBound(changedStarts, changedCount, end);
+
+        int count = first + starts.size() + changedCount - last;
+        Object[] newSections = new Object[count];
+        int[] positions = new int[count];
+        int index = 0;
+        for (int i = 0; i < first; i++, index++) {
+            newSections[index] = changedSections[i];
+            positions[index] = changedStarts[i] + index;
+        }
+        for (int i = 0; i < starts.size(); i++, index++) {
+            newSections[index] = sections.get(i);
+            positions[index] = starts.get(i) + index;
+        }
+        for (int i = last; i < changedCount; i++, index++) {
+            newSections[index] = changedSections[i];
+            positions[index] = changedStarts[i] + index;
+        }
+        applySections(new Sections(newSections, positions, null, false));
+
+        int keysCount;
+        synchronized (sectionKeysLock) {
+            keysCount = sectionKeys.size();
+        }
+        if (keysCount > size * 2 + 64) {
+            refreshSections();
+        }
+    }
+
+    /**
+     * @param changed true if item is inserted or changed and its memoized section can't be used.
+     * @return section of item or {@link #NO_SECTION}.
+     */
+    private Object getSectionKey(T item, boolean changed) {
+        Object key = null;
+        if (memoizeSections && !changed) {
+            synchronized (sectionKeysLock) {
+                key = sectionKeys.get(item);
+            }
+        }
+        if (key == null) {
+            Object section = sectionRetriever.getSectionFrom(item);
+            key = section != null ? section : NO_SECTION;
+        }
+        return key;
+    }
+
+    private static int lowerBound(int[] values, int size, int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
     @Override
     public int getSectionStart(int position) {
         return getPositionForSection(getSectionForPosition(position));
@@ -68,7 +307,8 @@ public class SimpleIndexer<T> implements ExtendedSectionIndexer {
 
     @Override
     public boolean isSectionStart(int position) {
-        return getSectionStart(position) == position;
+        int word = position >> 6;
+        return position >= 0 && word < headers.length && (headers[word] & (1L << position)) != 0;
     }
 
     @Override
@@ -89,18 +329,45 @@ public class SimpleIndexer<T> implements ExtendedSectionIndexer {
         return -1;
     }
 
+    /**
+     * @return index of the last section that starts at or before position, -1 if there is none.
+     */
     @Override
     public int getSectionForPosition(int position) {
-        for (int i = 0; i < sectionPositions.length; i++) {
-            if (sectionPositions[i] > position) {
-                return i - 1;
-            } else if (sectionPositions[i] == position) {
-                return i;
+        int index = Arrays.binarySearch(sectionPositions, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static class Sections {
+        final Object[] sections;
+        final int[] positions;
+        final long[] headers;
+        final IdentityHashMap<Object, Object> keys;
+        final boolean emptyListSection;
+
+        /**
+         * @param keys memoized sections of items or null to keep current ones.
+         */
+        Sections(Object[] sections, int[] positions, IdentityHashMap<Object, Object> keys,
+                 boolean emptyListSection) {
+            this.sections = sections;
+            this.positions = positions;
+            this.keys = keys;
+            this.emptyListSection = emptyListSection;
+            if (positions.length > 0) {
+                headers = new long[(positions[positions.length - 1] >> 6) + 1];
+                for (int position : positions) {
+                    headers[position >> 6] |= 1L << position;
+                }
+            } else {
+                headers = NO_HEADERS;
             }
         }
-        return sectionPositions.length - 1;
     }
 
+    /**
+     * Called on a background thread when sections are computed asynchronously.
+     */
     public interface SectionRetriever<T> {
         Object getSectionFrom(T item);
     }
@@ -1,29 +1,77 @@
 package com.shaubert.ui.adapters;
 
 import android.text.TextUtils;
+import com.shaubert.ui.adapters.common.IntArrayList;
 import com.shaubert.ui.adapters.common.Strings;
+import com.shaubert.ui.adapters.common.TokenArena;
+import com.shaubert.ui.adapters.common.Tokenizer;
+import com.shaubert.ui.adapters.common.WordsMatcher;
 
-import java.util.Locale;
+import java.util.Arrays;
 
-public class SimpleQuery implements ItemsFilter.Query {
+public class SimpleQuery implements ItemsFilter.IndexableQuery, ItemsFilter.SpansQuery,
+        ItemsFilter.RefinableQuery, ItemsFilter.CacheableQuery {
     private String query;
     private String[] queryWords;
+    private WordsMatcher matcher;
 
     public SimpleQuery(String query) {
         this.query = query;
         if (query != null) {
-            queryWords = query.toLowerCase(Locale.getDefault()).split(" ");
+            queryWords = Tokenizer.split(query);
         } else {
             queryWords = new String[0];
         }
+        matcher = new WordsMatcher(new String[][]{queryWords});
     }
 
     public boolean isEmpty() {
         return TextUtils.isEmpty(query);
     }
 
+    @Override
+    public String[][] getWordVariants() {
+        return new String[][]{queryWords};
+    }
+
     @Override
     public boolean match(String[] splittedName) {
-        return isEmpty() || Strings.containsAllQueryWords(splittedName, queryWords);
+        return isEmpty() || matcher.matches(splittedName);
+    }
+
+    @Override
+    public boolean match(TokenArena.Tokens tokens) {
+        return isEmpty() || matcher.matches(tokens);
+    }
+
+    @Override
+    public int[] findSpans(TokenArena.Tokens tokens) {
+        IntArrayList spans = new IntArrayList(queryWords.length * 3);
+        return tokens.findSpans(queryWords, spans) ? spans.toArray() : null;
+    }
+
+    @Override
+    public boolean refines(ItemsFilter.Query previous) {
+        if (previous == null || previous.isEmpty()) {
+            return true;
+        }
+        return !isEmpty()
+                && previous instanceof ItemsFilter.IndexableQuery
+                && Strings.refinesWordVariants(getWordVariants(),
+                ((ItemsFilter.IndexableQuery) previous).getWordVariants());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SimpleQuery that = (SimpleQuery) o;
+        return isEmpty() == that.isEmpty() && Arrays.equals(queryWords, that.queryWords);
+    }
+
+    @Override
+    public int hashCode() {
+        return isEmpty() ? 0 : Arrays.hashCode(queryWords);
     }
 }
@@ -0,0 +1,112 @@
+package com.shaubert.ui.adapters;
+
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws header of the top visible section over {@link RecyclerSectionAdapter} list, next header pushes it up.
+ * Header views are created, bound and measured once per section and kept in a small LRU, so scrolling
+ * only draws them. Cached headers are dropped when adapter sections are refreshed or with
+ * {@link #invalidateHeaders()}.
+ */
+public class StickySectionHeadersDecoration extends RecyclerView.ItemDecoration {
+
+    public static final int DEFAULT_CACHE_SIZE = 4;
+
+    private final RecyclerSectionAdapter<?, ?> adapter;
+    private final int cacheSize;
+    private final Map<Object, RecyclerView.ViewHolder> headers;
+    private Object[] cachedSections;
+    private int cachedWidth;
+
+    public StickySectionHeadersDecoration(RecyclerSectionAdapter<?, ?> adapter) {
+        this(adapter, DEFAULT_CACHE_SIZE);
+    }
+
+    public StickySectionHeadersDecoration(RecyclerSectionAdapter<?, ?> adapter, int cacheSize) {
+        this.adapter = adapter;
+        this.cacheSize = Math.max(1, cacheSize);
+        this.headers = new LinkedHashMap<Object, RecyclerView.ViewHolder>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, RecyclerView.ViewHolder> eldest) {
+                return size() > StickySectionHeadersDecoration.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Drops cached header views, for example if they show data that isn't part of section object.
+     */
+    public void invalidateHeaders() {
+        headers.clear();
+        cachedSections = null;
+    }
+
+    @Override
+    public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        if (parent.getChildCount() == 0 || adapter.getSectionIndexer() == null) {
+            return;
+        }
+        int position = parent.getChildAdapterPosition(parent.getChildAt(0));
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        Object[] sections = adapter.getSections();
+        int section = adapter.getSectionForPosition(position);
+        if (section < 0 || section >= sections.length) {
+            return;
+        }
+
+        View header = getHeader(parent, sections, section);
+        int top = parent.getClipToPadding() ? parent.getPaddingTop() : 0;
+        if (section + 1 < sections.length) {
+            RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
+            View nextHeader = layoutManager != null
+                    ? layoutManager.findViewByPosition(adapter.getPositionForSection(section + 1))
+                    : null;
+            if (nextHeader != null) {
+                top = Math.min(top, nextHeader.getTop() - header.getHeight());
+            }
+        }
+
+        int saveCount = canvas.save();
+        canvas.translate(parent.getPaddingLeft(), top);
+        header.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private View getHeader(RecyclerView parent, Object[] sections, int section) {
+        int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+        if (sections != cachedSections || width != cachedWidth) {
+            headers.clear();
+            cachedSections = sections;
+            cachedWidth = width;
+        }
+
+        Object key = sections[section];
+        RecyclerView.ViewHolder holder = headers.get(key);
+        if (holder == null) {
+            holder = adapter.onCreateViewHolder(parent, RecyclerSectionAdapter.ITEM_TYPE_HEADER);
+            adapter.onBindViewHolder(holder, adapter.getPositionForSection(section));
+            measure(holder.itemView, parent, width);
+            headers.put(key, holder);
+        }
+        return holder.itemView;
+    }
+
+    private void measure(View header, RecyclerView parent, int width) {
+        ViewGroup.LayoutParams params = header.getLayoutParams();
+        int height = params != null ? params.height : ViewGroup.LayoutParams.WRAP_CONTENT;
+        int heightSpec = ViewGroup.getChildMeasureSpec(
+                View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED),
+                parent.getPaddingTop() + parent.getPaddingBottom(), height);
+        header.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY), heightSpec);
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    }
+}
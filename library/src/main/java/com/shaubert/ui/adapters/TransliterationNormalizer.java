@@ -0,0 +1,67 @@
+package com.shaubert.ui.adapters;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces characters by table, like Cyrillic letters with Latin ones. Text is lower cased first.
+ */
+public class TransliterationNormalizer implements ItemsFilter.Normalizer {
+
+    private static final char CYRILLIC_A = '\u0430';
+    private static final char CYRILLIC_YO = '\u0451';
+    private static final String[] CYRILLIC_TO_LATIN = {
+            "a", "b", "v", "g", "d", "e", "zh", "z", "i", "y", "k", "l", "m", "n", "o", "p",
+            "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"
+    };
+
+    private final char[] chars;
+    private final String[] replacements;
+
+    /**
+     * @param table lower case characters and their replacements.
+     */
+    public TransliterationNormalizer(Map<Character, String> table) {
+        Map<Character, String> sortedTable = new TreeMap<>(table);
+        chars = new char[sortedTable.size()];
+        replacements = new String[sortedTable.size()];
+        int i = 0;
+        for (Map.Entry<Character, String> entry : sortedTable.entrySet()) {
+            chars[i] = entry.getKey();
+            replacements[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * @return transliteration of Russian Cyrillic letters to Latin.
+     */
+    public static TransliterationNormalizer cyrillicToLatin() {
+        Map<Character, String> table = new TreeMap<>();
+        for (int i = 0; i < CYRILLIC_TO_LATIN.length; i++) {
+            table.put((char) (CYRILLIC_A + i), CYRILLIC_TO_LATIN[i]);
+        }
+        table.put(CYRILLIC_YO, "e");
+        return new TransliterationNormalizer(table);
+    }
+
+    @Override
+    public String normalize(String text) {
+        StringBuilder result = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int index = Arrays.binarySearch(chars, c);
+            if (index >= 0) {
+                if (result == null) {
+                    result = new StringBuilder(text.length() + 8);
+                    result.append(text, 0, i);
+                }
+                result.append(replacements[index]);
+            } else if (result != null) {
+                result.append(c);
+            }
+        }
+        return result != null ? result.toString() : null;
+    }
+}
@@ -0,0 +1,80 @@
+package com.shaubert.ui.adapters.common;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BackgroundExecutor {
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor executor;
+    private static Executor parallelExecutor;
+    private static Handler mainHandler;
+
+    public static synchronized Executor get() {
+        if (executor == null) {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 1,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new BackgroundThreadFactory("adapters-background-", Thread.MIN_PRIORITY));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        return executor;
+    }
+
+    public static int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return pool with a thread per processor for work that is split into chunks.
+     */
+    public static synchronized Executor getParallel() {
+        if (parallelExecutor == null) {
+            int parallelism = getParallelism();
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(parallelism, parallelism,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new BackgroundThreadFactory("adapters-parallel-", Thread.NORM_PRIORITY));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            parallelExecutor = threadPoolExecutor;
+        }
+        return parallelExecutor;
+    }
+
+    public static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String namePrefix;
+        private final int priority;
+
+        BackgroundThreadFactory(String namePrefix, int priority) {
+            this.namePrefix = namePrefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+
+    private BackgroundExecutor() {}
+}
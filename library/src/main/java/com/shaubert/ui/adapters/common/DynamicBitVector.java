@@ -0,0 +1,395 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Sequence of bits that supports insertion and removal at any index. Bits are split into chunks of up to
+ * {@link #CHUNK_BITS} bits with Fenwick trees of chunk sizes and of set bits in chunks, so insertion, removal,
+ * rank and select take O(log n) and move only bits of one chunk.
+ */
+public class DynamicBitVector {
+
+    private static final int CHUNK_WORDS = 32;
+    static final int CHUNK_BITS = CHUNK_WORDS * 64;
+
+    private long[][] chunks = new long[0][];
+    private int[] sizes = new int[0];
+    private int[] counts = new int[0];
+    private int chunkCount;
+    private int[] sizeTree = new int[1];
+    private int[] countTree = new int[1];
+    private boolean treesValid = true;
+    /**
+     * True if all chunks but the last one are full, so chunk of index is found without trees.
+     */
+    private boolean uniform = true;
+    private int size;
+    private int cardinality;
+
+    /**
+     * Sets size and all bits to value.
+     */
+    public void reset(int size, boolean value) {
+        allocate(size);
+        if (value) {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                long[] words = chunks[chunk];
+                int bits = sizes[chunk];
+                Arrays.fill(words, 0, bits >>> 6, -1L);
+                if ((bits & 63) != 0) {
+                    words[bits >>> 6] = (1L << bits) - 1;
+                }
+                counts[chunk] = bits;
+            }
+            cardinality = size;
+        }
+    }
+
+    /**
+     * Sets size and bits from bit set, bits of bit set after size are ignored.
+     */
+    public void setBits(long[] bits, int size) {
+        allocate(size);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            long[] words = chunks[chunk];
+            int from = chunk * CHUNK_WORDS;
+            System.arraycopy(bits, Math.min(from, bits.length), words, 0,
+                    Math.max(0, Math.min(CHUNK_WORDS, bits.length - from)));
+            int chunkSize = sizes[chunk];
+            if ((chunkSize & 63) != 0) {
+                words[chunkSize >>> 6] &= (1L << chunkSize) - 1;
+            }
+            counts[chunk] = bitCount(words);
+            cardinality += counts[chunk];
+        }
+    }
+
+    /**
+     * @return bit set of all bits.
+     */
+    public long[] toBits() {
+        long[] result = new long[(size + 63) >>> 6];
+        int start = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            long[] words = chunks[chunk];
+            int chunkSize = sizes[chunk];
+            for (int i = 0; i << 6 < chunkSize; i++) {
+                int position = start + (i << 6);
+                int shift = position & 63;
+                result[position >>> 6] |= words[i] << shift;
+                if (shift != 0 && (position >>> 6) + 1 < result.length) {
+                    result[(position >>> 6) + 1] |= words[i] >>> (64 - shift);
+                }
+            }
+            start += chunkSize;
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of set bits.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean get(int index) {
+        checkIndex(index, size);
+        int chunk = findChunk(index);
+        int offset = index - getChunkStart(chunk);
+        return (chunks[chunk][offset >>> 6] & (1L << offset)) != 0;
+    }
+
+    public void set(int index, boolean value) {
+        checkIndex(index, size);
+        int chunk = findChunk(index);
+        int offset = index - getChunkStart(chunk);
+        long[] words = chunks[chunk];
+        long mask = 1L << offset;
+        boolean oldValue = (words[offset >>> 6] & mask) != 0;
+        if (oldValue != value) {
+            words[offset >>> 6] ^= mask;
+            addCount(chunk, value ? 1 : -1);
+        }
+    }
+
+    /**
+     * Inserts bit at index, bits from index move one up.
+     */
+    public void insert(int index, boolean value) {
+        checkIndex(index, size + 1);
+        ensureTrees();
+        uniform = false;
+        if (chunkCount == 0) {
+            insertChunk(0);
+        }
+        int chunk = index == size ? chunkCount - 1 : search(sizeTree, index);
+        int offset = index - prefix(sizeTree, chunk);
+        if (sizes[chunk] == CHUNK_BITS) {
+            split(chunk);
+            if (offset > sizes[chunk]) {
+                offset -= sizes[chunk];
+                chunk++;
+            }
+        }
+
+        insertBit(chunks[chunk], sizes[chunk], offset, value);
+        sizes[chunk]++;
+        add(sizeTree, chunk, 1);
+        size++;
+        if (value) {
+            addCount(chunk, 1);
+        }
+    }
+
+    /**
+     * Removes bit at index, bits after it move one down.
+     * @return removed bit.
+     */
+    public boolean remove(int index) {
+        checkIndex(index, size);
+        ensureTrees();
+        uniform = false;
+        int chunk = search(sizeTree, index);
+        int offset = index - prefix(sizeTree, chunk);
+        boolean value = removeBit(chunks[chunk], sizes[chunk], offset);
+        sizes[chunk]--;
+        add(sizeTree, chunk, -1);
+        size--;
+        if (value) {
+            addCount(chunk, -1);
+        }
+        if (sizes[chunk] == 0) {
+            removeChunk(chunk);
+        }
+        return value;
+    }
+
+    /**
+     * @return number of set bits before index.
+     */
+    public int rank(int index) {
+        checkIndex(index, size + 1);
+        if (index == size) {
+            return cardinality;
+        }
+        ensureTrees();
+        int chunk = findChunk(index);
+        int offset = index - getChunkStart(chunk);
+        long[] words = chunks[chunk];
+        int result = prefix(countTree, chunk);
+        for (int i = 0; i < offset >>> 6; i++) {
+            result += Long.bitCount(words[i]);
+        }
+        return result + Long.bitCount(words[offset >>> 6] & ((1L << offset) - 1));
+    }
+
+    /**
+     * @return index of set bit that has rank set bits before it.
+     */
+    public int select(int rank) {
+        checkIndex(rank, cardinality);
+        ensureTrees();
+        int chunk = search(countTree, rank);
+        int remaining = rank - prefix(countTree, chunk);
+        long[] words = chunks[chunk];
+        int word = 0;
+        int wordCount = Long.bitCount(words[0]);
+        while (remaining >= wordCount) {
+            remaining -= wordCount;
+            wordCount = Long.bitCount(words[++word]);
+        }
+        long bits = words[word];
+        for (; remaining > 0; remaining--) {
+            bits &= bits - 1;
+        }
+        return getChunkStart(chunk) + (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private void allocate(int size) {
+        int count = (size + CHUNK_BITS - 1) / CHUNK_BITS;
+        ensureChunkCapacity(count);
+        for (int chunk = 0; chunk < count; chunk++) {
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new long[CHUNK_WORDS];
+            } else {
+                Arrays.fill(chunks[chunk], 0);
+            }
+            sizes[chunk] = Math.min(CHUNK_BITS, size - chunk * CHUNK_BITS);
+            counts[chunk] = 0;
+        }
+        Arrays.fill(chunks, count, chunks.length, null);
+        chunkCount = count;
+        this.size = size;
+        cardinality = 0;
+        uniform = true;
+        treesValid = false;
+    }
+
+    private int findChunk(int index) {
+        if (uniform) {
+            return index / CHUNK_BITS;
+        }
+        ensureTrees();
+        return search(sizeTree, index);
+    }
+
+    private int getChunkStart(int chunk) {
+        return uniform ? chunk * CHUNK_BITS : prefix(sizeTree, chunk);
+    }
+
+    private void addCount(int chunk, int delta) {
+        counts[chunk] += delta;
+        cardinality += delta;
+        if (treesValid) {
+            add(countTree, chunk, delta);
+        }
+    }
+
+    /**
+     * Moves upper half of full chunk to a new chunk after it.
+     */
+    private void split(int chunk) {
+        insertChunk(chunk + 1);
+        long[] words = chunks[chunk];
+        long[] upper = chunks[chunk + 1];
+        int halfWords = CHUNK_WORDS / 2;
+        System.arraycopy(words, halfWords, upper, 0, CHUNK_WORDS - halfWords);
+        Arrays.fill(words, halfWords, CHUNK_WORDS, 0);
+        int upperCount = bitCount(upper);
+        sizes[chunk + 1] = sizes[chunk] - (halfWords << 6);
+        counts[chunk + 1] = upperCount;
+        sizes[chunk] = halfWords << 6;
+        counts[chunk] -= upperCount;
+        rebuildTrees();
+    }
+
+    private void insertChunk(int chunk) {
+        ensureChunkCapacity(chunkCount + 1);
+        System.arraycopy(chunks, chunk, chunks, chunk + 1, chunkCount - chunk);
+        System.arraycopy(sizes, chunk, sizes, chunk + 1, chunkCount - chunk);
+        System.arraycopy(counts, chunk, counts, chunk + 1, chunkCount - chunk);
+        chunks[chunk] = new long[CHUNK_WORDS];
+        sizes[chunk] = 0;
+        counts[chunk] = 0;
+        chunkCount++;
+        rebuildTrees();
+    }
+
+    private void removeChunk(int chunk) {
+        System.arraycopy(chunks, chunk + 1, chunks, chunk, chunkCount - chunk - 1);
+        System.arraycopy(sizes, chunk + 1, sizes, chunk, chunkCount - chunk - 1);
+        System.arraycopy(counts, chunk + 1, counts, chunk, chunkCount - chunk - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+        rebuildTrees();
+    }
+
+    private void ensureChunkCapacity(int capacity) {
+        if (capacity > chunks.length) {
+            int newCapacity = Math.max(capacity, chunks.length + (chunks.length >> 1));
+            chunks = Arrays.copyOf(chunks, newCapacity);
+            sizes = Arrays.copyOf(sizes, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+    }
+
+    private void ensureTrees() {
+        if (!treesValid) {
+            rebuildTrees();
+        }
+    }
+
+    private void rebuildTrees() {
+        if (sizeTree.length < chunkCount + 1) {
+            sizeTree = new int[chunks.length + 1];
+            countTree = new int[chunks.length + 1];
+        }
+        for (int i = 1; i <= chunkCount; i++) {
+            sizeTree[i] = sizes[i - 1];
+            countTree[i] = counts[i - 1];
+        }
+        for (int i = 1; i <= chunkCount; i++) {
+            int parent = i + (i & -i);
+            if (parent <= chunkCount) {
+                sizeTree[parent] += sizeTree[i];
+                countTree[parent] += countTree[i];
+            }
+        }
+        treesValid = true;
+    }
+
+    private void add(int[] tree, int chunk, int delta) {
+        for (int i = chunk + 1; i <= chunkCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return sum of values of chunks before chunk.
+     */
+    private int prefix(int[] tree, int chunk) {
+        int result = 0;
+        for (int i = chunk; i > 0; i -= i & -i) {
+            result += tree[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return chunk that contains element with index value when elements of chunks are counted by tree.
+     */
+    private int search(int[] tree, int value) {
+        int chunk = 0;
+        for (int step = Integer.highestOneBit(chunkCount); step > 0; step >>>= 1) {
+            int next = chunk + step;
+            if (next <= chunkCount && tree[next] <= value) {
+                chunk = next;
+                value -= tree[next];
+            }
+        }
+        return chunk;
+    }
+
+    private static void insertBit(long[] words, int size, int offset, boolean value) {
+        int word = offset >>> 6;
+        for (int i = size >>> 6; i > word; i--) {
+            words[i] = (words[i] << 1) | (words[i - 1] >>> 63);
+        }
+        long lowMask = (1L << offset) - 1;
+        long bits = words[word];
+        words[word] = (bits & lowMask) | ((bits & ~lowMask) << 1) | (value ? 1L << offset : 0);
+    }
+
+    private static boolean removeBit(long[] words, int size, int offset) {
+        int word = offset >>> 6;
+        long lowMask = (1L << offset) - 1;
+        long bits = words[word];
+        boolean value = (bits & (1L << offset)) != 0;
+        words[word] = (bits & lowMask) | ((bits >>> 1) & ~lowMask);
+        int lastWord = (size - 1) >>> 6;
+        for (int i = word; i < lastWord; i++) {
+            words[i] |= words[i + 1] << 63;
+            words[i + 1] >>>= 1;
+        }
+        return value;
+    }
+
+    private static int bitCount(long[] words) {
+        int result = 0;
+        for (long word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of source list items that passed the filter. Visible source items are marked in a
+ * {@link DynamicBitVector}, so positional access and a single source change take O(log n), or the view
+ * passes all source items through without any bits. Ranked view keeps source indices in the given order
+ * instead, items that become visible later are added to its end.
+ * Source changes must be reported with the {@code onSource...} methods after they are made.
+ */
+public class FilteredList<T> extends AbstractList<T> {
+
+    private static final int[] EMPTY = new int[0];
+
+    private List<T> source;
+    private boolean passthrough = true;
+    private boolean ranked;
+    private DynamicBitVector visible = new DynamicBitVector();
+    private int[] indices = EMPTY;
+    private int size;
+
+    public FilteredList(List<T> source) {
+        this.source = source;
+    }
+
+    public List<T> getSource() {
+        return source;
+    }
+
+    /**
+     * Replaces source with a list that has the same items in the same order.
+     */
+    public void setSource(List<T> source) {
+        this.source = source;
+        modCount++;
+    }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    public boolean isRanked() {
+        return !passthrough && ranked;
+    }
+
+    public void showAll() {
+        passthrough = true;
+        ranked = false;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Shows source items in the order of sourceIndices, like best matches first.
+     */
+    public void showRanked(int[] sourceIndices) {
+        passthrough = false;
+        ranked = true;
+        size = 0;
+        ensureCapacity(sourceIndices.length);
+        System.arraycopy(sourceIndices, 0, indices, 0, sourceIndices.length);
+        size = sourceIndices.length;
+        modCount++;
+    }
+
+    /**
+     * Shows source items with ascending sourceIndices.
+     */
+    public void setSourceIndices(int[] sourceIndices) {
+        long[] bits = new long[(source.size() + 63) >>> 6];
+        for (int sourceIndex : sourceIndices) {
+            bits[sourceIndex >>> 6] |= 1L << sourceIndex;
+        }
+        setSourceBits(bits);
+    }
+
+    /**
+     * Shows source items from bit set made by {@link #toSourceBits()}. View passes items through
+     * if all of them are set.
+     */
+    public void setSourceBits(long[] bits) {
+        int sourceSize = source.size();
+        visible.setBits(bits, sourceSize);
+        passthrough = visible.cardinality() == sourceSize;
+        ranked = false;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Takes source and visible items from other view.
+     */
+    public void setFrom(FilteredList<T> other) {
+        source = other.source;
+        passthrough = other.passthrough;
+        ranked = other.ranked;
+        visible = other.visible;
+        indices = other.indices;
+        size = other.size;
+        modCount++;
+    }
+
+    /**
+     * @return copy of ascending source indices of visible items.
+     */
+    public int[] toSourceIndices() {
+        if (passthrough) {
+            int[] result = new int[source.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = i;
+            }
+            return result;
+        }
+        if (ranked) {
+            int[] result = Arrays.copyOf(indices, size);
+            Arrays.sort(result);
+            return result;
+        }
+        long[] bits = visible.toBits();
+        int[] result = new int[visible.cardinality()];
+        int count = 0;
+        for (int i = 0; i < bits.length; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                result[count++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return bit set of source indices of visible items.
+     */
+    public long[] toSourceBits() {
+        if (!passthrough && !ranked) {
+            return visible.toBits();
+        }
+        int sourceSize = source.size();
+        long[] result = new long[(sourceSize + 63) >>> 6];
+        if (passthrough) {
+            Arrays.fill(result, -1L);
+            if ((sourceSize & 63) != 0) {
+                result[result.length - 1] = (1L << (sourceSize & 63)) - 1;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                result[indices[i] >>> 6] |= 1L << (indices[i] & 63);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public T get(int position) {
+        return source.get(getSourceIndex(position));
+    }
+
+    @Override
+    public int size() {
+        if (passthrough) {
+            return source.size();
+        }
+        return ranked ? size : visible.cardinality();
+    }
+
+    public int getSourceIndex(int position) {
+        if (passthrough) {
+            return position;
+        }
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size());
+        }
+        return ranked ? indices[position] : visible.select(position);
+    }
+
+    /**
+     * @return position of source item in view or -1 if it's filtered out.
+     */
+    public int getPosition(int sourceIndex) {
+        if (passthrough) {
+            return sourceIndex < source.size() ? sourceIndex : -1;
+        }
+        if (ranked) {
+            return rankedPosition(sourceIndex);
+        }
+        if (sourceIndex < 0 || sourceIndex >= visible.size() || !visible.get(sourceIndex)) {
+            return -1;
+        }
+        return visible.rank(sourceIndex);
+    }
+
+    @Override
+    public int indexOf(Object item) {
+        int sourceIndex = source.indexOf(item);
+        return sourceIndex >= 0 ? getPosition(sourceIndex) : -1;
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return indexOf(item) >= 0;
+    }
+
+    /**
+     * Item was inserted to source at sourceIndex.
+     * @return position of item in view or -1 if it isn't visible.
+     */
+    public int onSourceInserted(int sourceIndex, boolean visible) {
+        modCount++;
+        if (passthrough) {
+            if (visible) {
+                return sourceIndex;
+            }
+            materialize(source.size(), sourceIndex);
+            return -1;
+        }
+        if (ranked) {
+            shiftRanked(sourceIndex, 1);
+            if (!visible) {
+                return -1;
+            }
+            addRanked(sourceIndex);
+            return size - 1;
+        }
+
+        this.visible.insert(sourceIndex, visible);
+        return visible ? this.visible.rank(sourceIndex) : -1;
+    }
+
+    /**
+     * Item at sourceIndex was removed from source.
+     * @return former position of item in view or -1 if it wasn't visible.
+     */
+    public int onSourceRemoved(int sourceIndex) {
+        modCount++;
+        if (passthrough) {
+            return sourceIndex;
+        }
+        if (ranked) {
+            int position = rankedPosition(sourceIndex);
+            if (position >= 0) {
+                System.arraycopy(indices, position + 1, indices, position, size - position - 1);
+                size--;
+            }
+            shiftRanked(sourceIndex + 1, -1);
+            return position;
+        }
+
+        int position = visible.get(sourceIndex) ? visible.rank(sourceIndex) : -1;
+        visible.remove(sourceIndex);
+        return position;
+    }
+
+    /**
+     * Items marked in removed were removed from source.
+     * @param removed flags for source indices before removal.
+     * @param removedRanges if not null receives start and count of every removed range of view positions,
+     *                      positions are before removal.
+     */
+    public void onSourceRemoved(boolean[] removed, IntArrayList removedRanges) {
+        modCount++;
+        if (passthrough) {
+            if (removedRanges != null) {
+                addRanges(removed, removed.length, null, removedRanges);
+            }
+            return;
+        }
+
+        if (ranked) {
+            if (removedRanges != null) {
+                addRanges(removed, size, indices, removedRanges);
+            }
+            int[] removedBefore = new int[removed.length];
+            for (int i = 1; i < removed.length; i++) {
+                removedBefore[i] = removedBefore[i - 1] + (removed[i - 1] ? 1 : 0);
+            }
+            int write = 0;
+            for (int read = 0; read < size; read++) {
+                int sourceIndex = indices[read];
+                if (!removed[sourceIndex]) {
+                    indices[write++] = sourceIndex - removedBefore[sourceIndex];
+                }
+            }
+            size = write;
+            return;
+        }
+
+        long[] oldBits = visible.toBits();
+        long[] bits = new long[oldBits.length];
+        int position = 0;
+        int rangeStart = -1;
+        int write = 0;
+        for (int read = 0; read < removed.length; read++) {
+            boolean wasVisible = (oldBits[read >>> 6] & (1L << read)) != 0;
+            if (removed[read]) {
+                if (wasVisible && rangeStart < 0) {
+                    rangeStart = position;
+                }
+            } else {
+                if (wasVisible) {
+                    if (rangeStart >= 0 && removedRanges != null) {
+                        removedRanges.add(rangeStart);
+                        removedRanges.add(position - rangeStart);
+                    }
+                    rangeStart = -1;
+                    bits[write >>> 6] |= 1L << write;
+                }
+                write++;
+            }
+            if (wasVisible) {
+                position++;
+            }
+        }
+        if (rangeStart >= 0 && removedRanges != null) {
+            removedRanges.add(rangeStart);
+            removedRanges.add(position - rangeStart);
+        }
+        visible.setBits(bits, write);
+    }
+
+    /**
+     * Items were inserted to source.
+     * @param sourceIndices ascending indices of inserted items in source after insertion.
+     * @param visible flags for inserted items, null if all are visible.
+     * @param insertedPositions if not null receives ascending view positions of visible inserted items.
+     */
+    public void onSourceInserted(int[] sourceIndices, boolean[] visible, IntArrayList insertedPositions) {
+        modCount++;
+        if (passthrough) {
+            if (visible == null || allTrue(visible)) {
+                if (insertedPositions != null) {
+                    for (int sourceIndex : sourceIndices) {
+                        insertedPositions.add(sourceIndex);
+                    }
+                }
+                return;
+            }
+            materialize(source.size() - sourceIndices.length, -1);
+        }
+        if (ranked) {
+            onSourceInsertedRanked(sourceIndices, visible, insertedPositions);
+            return;
+        }
+
+        for (int i = 0; i < sourceIndices.length; i++) {
+            boolean itemVisible = visible == null || visible[i];
+            this.visible.insert(sourceIndices[i], itemVisible);
+            if (itemVisible && insertedPositions != null) {
+                insertedPositions.add(this.visible.rank(sourceIndices[i]));
+            }
+        }
+    }
+
+    private void onSourceInsertedRanked(int[] sourceIndices, boolean[] visible, IntArrayList insertedPositions) {
+        int[] newIndices = new int[source.size() - sourceIndices.length];
+        int inserted = 0;
+        int oldIndex = 0;
+        for (int newIndex = 0; oldIndex < newIndices.length; newIndex++) {
+            if (inserted < sourceIndices.length && sourceIndices[inserted] == newIndex) {
+                inserted++;
+            } else {
+                newIndices[oldIndex++] = newIndex;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            indices[i] = newIndices[indices[i]];
+        }
+        for (int i = 0; i < sourceIndices.length; i++) {
+            if (visible == null || visible[i]) {
+                if (insertedPositions != null) {
+                    insertedPositions.add(size);
+                }
+                addRanked(sourceIndices[i]);
+            }
+        }
+    }
+
+    private void addRanked(int sourceIndex) {
+        ensureCapacity(size + 1);
+        indices[size++] = sourceIndex;
+    }
+
+    private int rankedPosition(int sourceIndex) {
+        for (int i = 0; i < size; i++) {
+            if (indices[i] == sourceIndex) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds delta to ranked indices that are not less than fromSourceIndex.
+     */
+    private void shiftRanked(int fromSourceIndex, int delta) {
+        for (int i = 0; i < size; i++) {
+            if (indices[i] >= fromSourceIndex) {
+                indices[i] += delta;
+            }
+        }
+    }
+
+    private void addRanges(boolean[] removed, int count, int[] sourceIndices, IntArrayList ranges) {
+        int rangeStart = -1;
+        for (int position = 0; position < count; position++) {
+            int sourceIndex = sourceIndices != null ? sourceIndices[position] : position;
+            if (removed[sourceIndex]) {
+                if (rangeStart < 0) {
+                    rangeStart = position;
+                }
+            } else if (rangeStart >= 0) {
+                ranges.add(rangeStart);
+                ranges.add(position - rangeStart);
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart >= 0) {
+            ranges.add(rangeStart);
+            ranges.add(count - rangeStart);
+        }
+    }
+
+    /**
+     * Switches from passthrough to bits of count source items, all set except excludedIndex.
+     */
+    private void materialize(int count, int excludedIndex) {
+        passthrough = false;
+        ranked = false;
+        size = 0;
+        visible.reset(count, true);
+        if (excludedIndex >= 0) {
+            visible.set(excludedIndex, false);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > indices.length) {
+            indices = Arrays.copyOf(indices, Math.max(capacity, indices.length + (indices.length >> 1)));
+        }
+    }
+
+    private static boolean allTrue(boolean[] flags) {
+        for (boolean flag : flags) {
+            if (!flag) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package com.shaubert.ui.adapters.common;
+
+/**
+ * Counter of background requests. Each request takes a new generation on the main thread and
+ * checks from any thread whether it's still the latest one.
+ */
+public class Generation {
+
+    private volatile int value;
+
+    public int next() {
+        return ++value;
+    }
+
+    public void invalidate() {
+        value++;
+    }
+
+    public boolean isCurrent(int generation) {
+        return value == generation;
+    }
+}
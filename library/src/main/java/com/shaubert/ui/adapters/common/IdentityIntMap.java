@@ -0,0 +1,150 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from object identity to primitive int values.
+ */
+public class IdentityIntMap {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+    private int threshold;
+
+    public IdentityIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(Object key, int defaultValue) {
+        int index = indexOf(key);
+        return keys[index] != null ? values[index] : defaultValue;
+    }
+
+    public void put(Object key, int value) {
+        int index = indexOf(key);
+        if (keys[index] != null) {
+            values[index] = value;
+            return;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * @return removed value or defaultValue if there is no such key.
+     */
+    public int remove(Object key, int defaultValue) {
+        int index = indexOf(key);
+        if (keys[index] == null) {
+            return defaultValue;
+        }
+        int result = values[index];
+        keys[index] = null;
+        size--;
+
+        int mask = keys.length - 1;
+        int next = (index + 1) & mask;
+        while (keys[next] != null) {
+            int home = hash(keys[next]) & mask;
+            boolean shift = next > index
+                    ? (home <= index || home > next)
+                    : (home <= index && home > next);
+            if (shift) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                keys[next] = null;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return result;
+    }
+
+    /**
+     * Puts all entries of other map.
+     */
+    public void putAll(IdentityIntMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null) {
+                put(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * Number of slots for iteration with {@link #keyAt(int)} and {@link #valueAt(int)}.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return key at slot or null if slot is empty.
+     */
+    public Object keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    public void setValueAt(int slot, int value) {
+        values[slot] = value;
+    }
+
+    private int indexOf(Object key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != null && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
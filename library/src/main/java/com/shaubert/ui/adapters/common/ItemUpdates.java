@@ -0,0 +1,72 @@
+package com.shaubert.ui.adapters.common;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records list updates in order, so they can be dispatched later or translated to other positions.
+ */
+public class ItemUpdates implements ListUpdateCallback {
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+
+    private final IntArrayList updates = new IntArrayList();
+    private final List<Object> payloads = new ArrayList<>();
+
+    @Override
+    public void onInserted(int position, int count) {
+        add(INSERTED, position, count, null);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        add(REMOVED, position, count, null);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        add(MOVED, fromPosition, toPosition, null);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        add(CHANGED, position, count, payload);
+    }
+
+    private void add(int type, int first, int second, Object payload) {
+        updates.add(type);
+        updates.add(first);
+        updates.add(second);
+        payloads.add(payload);
+    }
+
+    public boolean isEmpty() {
+        return updates.isEmpty();
+    }
+
+    public void dispatchTo(ListUpdateCallback callback) {
+        for (int i = 0; i < payloads.size(); i++) {
+            int first = updates.get(i * 3 + 1);
+            int second = updates.get(i * 3 + 2);
+            switch (updates.get(i * 3)) {
+                case INSERTED:
+                    callback.onInserted(first, second);
+                    break;
+                case REMOVED:
+                    callback.onRemoved(first, second);
+                    break;
+                case MOVED:
+                    callback.onMoved(first, second);
+                    break;
+                default:
+                    callback.onChanged(first, second, payloads.get(i));
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive long keys and int values.
+ */
+public class LongIntMap {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int threshold;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    public int get(long key, int defaultValue) {
+        int index = indexOf(key);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    public void put(long key, int value) {
+        int index = indexOf(key);
+        if (used[index]) {
+            values[index] = value;
+            return;
+        }
+        keys[index] = key;
+        values[index] = value;
+        used[index] = true;
+        if (++size > threshold) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public void remove(long key) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            return;
+        }
+        used[index] = false;
+        size--;
+
+        int mask = keys.length - 1;
+        int next = (index + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            boolean shift = next > index
+                    ? (home <= index || home > next)
+                    : (home <= index && home > next);
+            if (shift) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                used[index] = true;
+                used[next] = false;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                used[index] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
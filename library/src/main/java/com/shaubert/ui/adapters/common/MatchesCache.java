@@ -0,0 +1,66 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used filter results keyed by query. Results are bit sets of matching source indices
+ * and are valid for one version of source items only.
+ */
+public class MatchesCache {
+
+    private final Map<Object, long[]> matches = new LinkedHashMap<Object, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, long[]> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private int maxSize;
+    private int sourceVersion;
+
+    public MatchesCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        Iterator<Object> queries = matches.keySet().iterator();
+        while (matches.size() > Math.max(0, maxSize)) {
+            queries.next();
+            queries.remove();
+        }
+    }
+
+    /**
+     * @return matches of query for source items of sourceVersion or null.
+     */
+    public long[] get(Object query, int sourceVersion) {
+        if (this.sourceVersion != sourceVersion) {
+            return null;
+        }
+        return matches.get(query);
+    }
+
+    /**
+     * Stores matches of query. Matches of other source versions are dropped.
+     */
+    public void put(Object query, int sourceVersion, long[] queryMatches) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (this.sourceVersion != sourceVersion) {
+            matches.clear();
+            this.sourceVersion = sourceVersion;
+        }
+        matches.put(query, queryMatches);
+    }
+
+    public void clear() {
+        matches.clear();
+    }
+}
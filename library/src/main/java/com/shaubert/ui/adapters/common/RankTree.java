@@ -0,0 +1,176 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sequence of int handles backed by a treap with subtree sizes and parent links. Insertion and
+ * removal by position and position lookup by handle take O(log n), handles don't change when
+ * other handles are inserted or removed before them.
+ */
+public class RankTree {
+
+    private static final int NIL = 0;
+    private static final int MIN_CAPACITY = 16;
+    private static final Random RANDOM = new Random();
+
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private int[] sizes;
+    private int[] priorities;
+    private int root = NIL;
+    private int allocated;
+    private int free = NIL;
+
+    private int splitLeft;
+    private int splitRight;
+
+    public RankTree() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return sizes[root];
+    }
+
+    public void clear() {
+        root = NIL;
+        allocated = 0;
+        free = NIL;
+    }
+
+    /**
+     * @return handle of the new element at position.
+     */
+    public int insert(int position) {
+        if (position < 0 || position > size()) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size());
+        }
+        int node = newNode();
+        split(root, position);
+        root = merge(merge(splitLeft, node), splitRight);
+        parent[root] = NIL;
+        return node;
+    }
+
+    /**
+     * @return handle of the removed element. It may be reused by later insertions.
+     */
+    public int remove(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size());
+        }
+        split(root, position);
+        int before = splitLeft;
+        split(splitRight, 1);
+        int node = splitLeft;
+        root = merge(before, splitRight);
+        parent[root] = NIL;
+        sizes[node] = 0;
+        right[node] = free;
+        free = node;
+        return node;
+    }
+
+    /**
+     * @return position of element with handle or -1 if it was removed.
+     */
+    public int getPosition(int handle) {
+        if (handle <= NIL || handle > allocated || sizes[handle] == 0) {
+            return -1;
+        }
+        int position = sizes[left[handle]];
+        int node = handle;
+        while (parent[node] != NIL) {
+            int up = parent[node];
+            if (right[up] == node) {
+                position += sizes[left[up]] + 1;
+            }
+            node = up;
+        }
+        return node == root ? position : -1;
+    }
+
+    private int newNode() {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = right[node];
+        } else {
+            node = ++allocated;
+            if (node == sizes.length) {
+                allocate(sizes.length * 2);
+            }
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        parent[node] = NIL;
+        sizes[node] = 1;
+        priorities[node] = RANDOM.nextInt();
+        return node;
+    }
+
+    private void split(int node, int count) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        if (count <= sizes[left[node]]) {
+            split(left[node], count);
+            setLeft(node, splitRight);
+            splitRight = node;
+        } else {
+            split(right[node], count - sizes[left[node]] - 1);
+            setRight(node, splitLeft);
+            splitLeft = node;
+        }
+        parent[splitLeft] = NIL;
+        parent[splitRight] = NIL;
+    }
+
+    private int merge(int first, int second) {
+        if (first == NIL) {
+            return second;
+        }
+        if (second == NIL) {
+            return first;
+        }
+        if (priorities[first] > priorities[second]) {
+            setRight(first, merge(right[first], second));
+            return first;
+        } else {
+            setLeft(second, merge(first, left[second]));
+            return second;
+        }
+    }
+
+    private void setLeft(int node, int child) {
+        left[node] = child;
+        parent[child] = node;
+        sizes[node] = sizes[child] + sizes[right[node]] + 1;
+    }
+
+    private void setRight(int node, int child) {
+        right[node] = child;
+        parent[child] = node;
+        sizes[node] = sizes[left[node]] + sizes[child] + 1;
+    }
+
+    private void allocate(int capacity) {
+        if (left == null) {
+            left = new int[capacity];
+            right = new int[capacity];
+            parent = new int[capacity];
+            sizes = new int[capacity];
+            priorities = new int[capacity];
+        } else {
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+        }
+    }
+}
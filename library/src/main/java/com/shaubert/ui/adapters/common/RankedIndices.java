@@ -0,0 +1,104 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Collects scored source indices and sorts them best first, equal scores keep source order.
+ * A bounded heap keeps the best indices found so far, so they can be shown before all items are scored.
+ */
+public class RankedIndices {
+
+    private long[] keys;
+    private int size;
+    private final long[] top;
+    private int topSize;
+
+    /**
+     * @param topCount how many best indices are available with {@link #getTop()}.
+     */
+    public RankedIndices(int expectedSize, int topCount) {
+        keys = new long[Math.max(expectedSize, 16)];
+        top = new long[Math.max(topCount, 0)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param score positive score, bigger is better.
+     */
+    public void add(int sourceIndex, int score) {
+        long key = ((long) (Integer.MAX_VALUE - score) << 32) | sourceIndex;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+
+        if (topSize < top.length) {
+            top[topSize] = key;
+            siftUp(topSize++);
+        } else if (topSize > 0 && key < top[0]) {
+            top[0] = key;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return best of added source indices, best first.
+     */
+    public int[] getTop() {
+        long[] sorted = Arrays.copyOf(top, topSize);
+        Arrays.sort(sorted);
+        return toIndices(sorted, topSize);
+    }
+
+    /**
+     * @return all added source indices, best first.
+     */
+    public int[] toSortedIndices() {
+        Arrays.sort(keys, 0, size);
+        return toIndices(keys, size);
+    }
+
+    private static int[] toIndices(long[] keys, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * Heap keeps the worst of top keys at root.
+     */
+    private void siftUp(int index) {
+        long key = top[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (top[parent] >= key) {
+                break;
+            }
+            top[index] = top[parent];
+            index = parent;
+        }
+        top[index] = key;
+    }
+
+    private void siftDown(int index) {
+        long key = top[index];
+        int half = topSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < topSize && top[child + 1] > top[child]) {
+                child++;
+            }
+            if (key >= top[child]) {
+                break;
+            }
+            top[index] = top[child];
+            index = child;
+        }
+        top[index] = key;
+    }
+}
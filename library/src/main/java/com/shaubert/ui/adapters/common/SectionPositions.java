@@ -0,0 +1,116 @@
+package com.shaubert.ui.adapters.common;
+
+import android.widget.SectionIndexer;
+
+/**
+ * Prefix table of section header positions. Maps adapter positions that include headers
+ * to item positions and back with binary search.
+ */
+public class SectionPositions {
+
+    private static final int[] EMPTY = new int[0];
+
+    private Object[] sections;
+    private int[] headerPositions = EMPTY;
+    private int[] itemStarts = EMPTY;
+
+    /**
+     * Rebuilds table from current sections of indexer.
+     */
+    public void update(SectionIndexer indexer) {
+        Object[] sections = indexer.getSections();
+        int[] headerPositions = new int[sections.length];
+        int[] itemStarts = new int[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            headerPositions[i] = indexer.getPositionForSection(i);
+            itemStarts[i] = headerPositions[i] - i;
+        }
+        this.sections = sections;
+        this.headerPositions = headerPositions;
+        this.itemStarts = itemStarts;
+    }
+
+    public void invalidate() {
+        sections = null;
+        headerPositions = EMPTY;
+        itemStarts = EMPTY;
+    }
+
+    public SectionPositions copy() {
+        SectionPositions result = new SectionPositions();
+        result.sections = sections;
+        result.headerPositions = headerPositions;
+        result.itemStarts = itemStarts;
+        return result;
+    }
+
+    public int getSectionsCount() {
+        return itemStarts.length;
+    }
+
+    /**
+     * @return position of the first item after header of section.
+     */
+    public int getItemStart(int section) {
+        return itemStarts[section];
+    }
+
+    public Object getSection(int section) {
+        return sections[section];
+    }
+
+    /**
+     * @return number of sections with headers before item position.
+     */
+    public int getSectionsCountBeforeItem(int itemPosition) {
+        return upperBound(itemStarts, itemPosition - 1);
+    }
+
+    /**
+     * @return true if table was built for this sections array.
+     */
+    public boolean isBuiltFor(Object[] sections) {
+        return this.sections == sections;
+    }
+
+    /**
+     * @return number of headers at or before adapter position.
+     */
+    public int getSectionsCountBefore(int position) {
+        return upperBound(headerPositions, position);
+    }
+
+    /**
+     * @return item position for adapter position that isn't a header.
+     */
+    public int toItemPosition(int position) {
+        return position - getSectionsCountBefore(position);
+    }
+
+    /**
+     * @return adapter position of item or -1 if item position is negative.
+     */
+    public int toAdapterPosition(int itemPosition) {
+        if (itemPosition < 0) {
+            return -1;
+        }
+        return itemPosition + upperBound(itemStarts, itemPosition);
+    }
+
+    /**
+     * @return number of values in ascending array that are less than or equal to value.
+     */
+    private static int upperBound(int[] values, int value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,279 @@
+package com.shaubert.ui.adapters.common;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates updates of items into updates of rows with section headers. Items that weren't removed
+ * keep their rows, headers are inserted and removed only where sections have changed, and headers
+ * of the same section around changed items are kept. Moves are dispatched as removal and insertion.
+ */
+public class SectionUpdates implements ListUpdateCallback {
+
+    private static final int OPEN_LENGTH = Integer.MAX_VALUE / 2;
+    private static final int MAX_MATCHED_HEADERS = 1 << 16;
+
+    /**
+     * Items of the current list as runs of {start in old list or -1 for inserted items, length}.
+     */
+    private final List<int[]> runs = new ArrayList<>();
+    private int insertedCount;
+    private int removedCount;
+    private final IntArrayList changedPositions = new IntArrayList();
+    private final List<Object> changedPayloads = new ArrayList<>();
+
+    public SectionUpdates() {
+        runs.add(new int[] {0, OPEN_LENGTH});
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int index = split(position);
+        runs.add(index, new int[] {-1, count});
+        insertedCount += count;
+        for (int i = 0; i < changedPositions.size(); i++) {
+            if (changedPositions.get(i) >= position) {
+                changedPositions.set(i, changedPositions.get(i) + count);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int from = split(position);
+        int to = split(position + count);
+        for (int i = from; i < to; i++) {
+            if (runs.get(i)[0] < 0) {
+                insertedCount -= runs.get(i)[1];
+            } else {
+                removedCount += runs.get(i)[1];
+            }
+        }
+        runs.subList(from, to).clear();
+        for (int i = 0; i < changedPositions.size(); i++) {
+            int changed = changedPositions.get(i);
+            if (changed >= position + count) {
+                changedPositions.set(i, changed - count);
+            } else if (changed >= position) {
+                changedPositions.set(i, -1);
+            }
+        }
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        int changedIndex = changedPositions.size();
+        for (int i = 0; i < changedPositions.size(); i++) {
+            if (changedPositions.get(i) == fromPosition) {
+                changedIndex = i;
+            }
+        }
+        onRemoved(fromPosition, 1);
+        onInserted(toPosition, 1);
+        if (changedIndex < changedPositions.size()) {
+            changedPositions.set(changedIndex, toPosition);
+        }
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        for (int i = 0; i < count; i++) {
+            changedPositions.add(position + i);
+            changedPayloads.add(payload);
+        }
+    }
+
+    /**
+     * Splits run at position of the current list.
+     * @return index of the first run at or after position.
+     */
+    private int split(int position) {
+        int start = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            int[] run = runs.get(i);
+            if (position == start) {
+                return i;
+            }
+            if (position < start + run[1]) {
+                int offset = position - start;
+                runs.add(i + 1, new int[] {run[0] < 0 ? -1 : run[0] + offset, run[1] - offset});
+                run[1] = offset;
+                return i + 1;
+            }
+            start += run[1];
+        }
+        return runs.size();
+    }
+
+    /**
+     * @param oldSections sections before updates.
+     * @param newSections sections after updates.
+     * @param itemsCount number of items after updates.
+     */
+    public void dispatchTo(SectionPositions oldSections, SectionPositions newSections, int itemsCount,
+                           ListUpdateCallback callback) {
+        Dispatcher dispatcher = new Dispatcher(oldSections, newSections, callback);
+        int oldItemsCount = itemsCount - insertedCount + removedCount;
+        int oldItem = 0;
+        int newItem = 0;
+        int gapNewStart = 0;
+        for (int[] run : runs) {
+            if (run[0] < 0) {
+                newItem += run[1];
+                continue;
+            }
+            int length = Math.min(run[1], oldItemsCount - run[0]);
+            if (length <= 0) {
+                break;
+            }
+            dispatcher.dispatchGap(oldItem, run[0], gapNewStart, newItem);
+            dispatcher.dispatchRun(run[0], newItem, length);
+            oldItem = run[0] + length;
+            newItem += length;
+            gapNewStart = newItem;
+        }
+        dispatcher.dispatchGap(oldItem, oldItemsCount, gapNewStart, itemsCount);
+
+        for (int i = 0; i < changedPositions.size(); i++) {
+            int position = changedPositions.get(i);
+            if (position >= 0) {
+                callback.onChanged(newSections.toAdapterPosition(position), 1, changedPayloads.get(i));
+            }
+        }
+    }
+
+    private static class Dispatcher {
+        final SectionPositions oldSections;
+        final SectionPositions newSections;
+        final ListUpdateCallback callback;
+        int row;
+
+        Dispatcher(SectionPositions oldSections, SectionPositions newSections, ListUpdateCallback callback) {
+            this.oldSections = oldSections;
+            this.newSections = newSections;
+            this.callback = callback;
+        }
+
+        /**
+         * Old items [oldFrom, oldTo) are removed and new items [newFrom, newTo) are inserted, along with headers
+         * before them. Headers of the same sections in the same order are kept.
+         */
+        void dispatchGap(int oldFrom, int oldTo, int newFrom, int newTo) {
+            int oldHeader = oldSections.getSectionsCountBeforeItem(oldFrom);
+            int oldHeadersEnd = oldSections.getSectionsCountBeforeItem(oldTo + 1);
+            int newHeader = newSections.getSectionsCountBeforeItem(newFrom);
+            int newHeadersEnd = newSections.getSectionsCountBeforeItem(newTo + 1);
+            int[] matches = matchHeaders(oldHeader, oldHeadersEnd, newHeader, newHeadersEnd);
+
+            int oldItem = oldFrom;
+            int newItem = newFrom;
+            for (int i = 0; i <= matches.length; i += 2) {
+                int oldMatch = i < matches.length ? matches[i] : oldHeadersEnd;
+                int newMatch = i < matches.length ? matches[i + 1] : newHeadersEnd;
+                int oldMatchItem = i < matches.length ? oldSections.getItemStart(oldMatch) : oldTo;
+                int newMatchItem = i < matches.length ? newSections.getItemStart(newMatch) : newTo;
+                int removed = oldMatch - oldHeader + oldMatchItem - oldItem;
+                int inserted = newMatch - newHeader + newMatchItem - newItem;
+                if (removed > 0) {
+                    callback.onRemoved(row, removed);
+                }
+                if (inserted > 0) {
+                    callback.onInserted(row, inserted);
+                    row += inserted;
+                }
+                if (i < matches.length) {
+                    row++;
+                }
+                oldHeader = oldMatch + 1;
+                newHeader = newMatch + 1;
+                oldItem = oldMatchItem;
+                newItem = newMatchItem;
+            }
+        }
+
+        /**
+         * Old items [oldFrom, oldFrom + length) are the same as new items [newFrom, newFrom + length),
+         * only headers between them can differ.
+         */
+        void dispatchRun(int oldFrom, int newFrom, int length) {
+            int oldHeader = oldSections.getSectionsCountBeforeItem(oldFrom + 1);
+            int oldHeadersEnd = oldSections.getSectionsCountBeforeItem(oldFrom + length);
+            int newHeader = newSections.getSectionsCountBeforeItem(newFrom + 1);
+            int newHeadersEnd = newSections.getSectionsCountBeforeItem(newFrom + length);
+            int offset = 0;
+            while (oldHeader < oldHeadersEnd || newHeader < newHeadersEnd) {
+                int oldOffset = oldHeader < oldHeadersEnd
+                        ? oldSections.getItemStart(oldHeader) - oldFrom : Integer.MAX_VALUE;
+                int newOffset = newHeader < newHeadersEnd
+                        ? newSections.getItemStart(newHeader) - newFrom : Integer.MAX_VALUE;
+                int headerOffset = Math.min(oldOffset, newOffset);
+                row += headerOffset - offset;
+                offset = headerOffset;
+                if (oldOffset == newOffset) {
+                    Object oldSection = oldSections.getSection(oldHeader++);
+                    Object newSection = newSections.getSection(newHeader++);
+                    if (!equal(oldSection, newSection)) {
+                        callback.onChanged(row, 1, null);
+                    }
+                    row++;
+                } else if (oldOffset < newOffset) {
+                    oldHeader++;
+                    callback.onRemoved(row, 1);
+                } else {
+                    newHeader++;
+                    callback.onInserted(row, 1);
+                    row++;
+                }
+            }
+            row += length - offset;
+        }
+
+        /**
+         * @return pairs of old and new sections with equal headers, longest common subsequence of both ranges.
+         */
+        private int[] matchHeaders(int oldFrom, int oldTo, int newFrom, int newTo) {
+            int oldCount = oldTo - oldFrom;
+            int newCount = newTo - newFrom;
+            if (oldCount == 0 || newCount == 0 || (long) oldCount * newCount > MAX_MATCHED_HEADERS) {
+                return new int[0];
+            }
+            int[][] lengths = new int[oldCount + 1][newCount + 1];
+            for (int i = oldCount - 1; i >= 0; i--) {
+                for (int j = newCount - 1; j >= 0; j--) {
+                    if (equal(oldSections.getSection(oldFrom + i), newSections.getSection(newFrom + j))) {
+                        lengths[i][j] = lengths[i + 1][j + 1] + 1;
+                    } else {
+                        lengths[i][j] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+                    }
+                }
+            }
+            int[] result = new int[lengths[0][0] * 2];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < oldCount && j < newCount) {
+                if (equal(oldSections.getSection(oldFrom + i), newSections.getSection(newFrom + j))) {
+                    result[size++] = oldFrom + i++;
+                    result[size++] = newFrom + j++;
+                } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+public class SortedLists {
+
+    public static <T> boolean isSorted(Iterable<T> items, Comparator<? super T> comparator) {
+        T prev = null;
+        boolean first = true;
+        for (T item : items) {
+            if (!first && comparator.compare(prev, item) > 0) {
+                return false;
+            }
+            first = false;
+            prev = item;
+        }
+        return true;
+    }
+
+    /**
+     * Merges two sorted collections in O(n + m). Items from batch go after equal items from target.
+     *
+     * @param insertedPositions if not null receives positions of batch items in result.
+     * @return merged list or null if target or batch isn't sorted.
+     */
+    public static <T> List<T> merge(Collection<T> target, Collection<T> batch,
+                                    Comparator<? super T> comparator, IntArrayList insertedPositions) {
+        List<T> result = new ArrayList<>(target.size() + batch.size());
+        Iterator<T> targetIterator = target.iterator();
+        Iterator<T> batchIterator = batch.iterator();
+        T targetItem = targetIterator.hasNext() ? targetIterator.next() : null;
+        T batchItem = batchIterator.hasNext() ? batchIterator.next() : null;
+        boolean hasTarget = !target.isEmpty();
+        boolean hasBatch = !batch.isEmpty();
+        while (hasTarget || hasBatch) {
+            if (hasTarget && (!hasBatch || comparator.compare(targetItem, batchItem) <= 0)) {
+                result.add(targetItem);
+                hasTarget = targetIterator.hasNext();
+                if (hasTarget) {
+                    T next = targetIterator.next();
+                    if (comparator.compare(targetItem, next) > 0) {
+                        return null;
+                    }
+                    targetItem = next;
+                }
+            } else {
+                if (insertedPositions != null) {
+                    insertedPositions.add(result.size());
+                }
+                result.add(batchItem);
+                hasBatch = batchIterator.hasNext();
+                if (hasBatch) {
+                    T next = batchIterator.next();
+                    if (comparator.compare(batchItem, next) > 0) {
+                        return null;
+                    }
+                    batchItem = next;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if item can replace item at index without breaking order.
+     */
+    public static <T> boolean canReplace(List<T> list, int index, T item, Comparator<? super T> comparator) {
+        if (index > 0 && comparator.compare(list.get(index - 1), item) > 0) {
+            return false;
+        }
+        return index + 1 >= list.size() || comparator.compare(item, list.get(index + 1)) <= 0;
+    }
+
+    /**
+     * Inserts item after all equal items of sorted list with a binary search.
+     * @return position of inserted item.
+     */
+    public static <T> int addSorted(List<T> list, T item, Comparator<? super T> comparator) {
+        if (list instanceof SortedTreeList) {
+            return ((SortedTreeList<T>) list).addSorted(item);
+        }
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(item, list.get(middle)) < 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        list.add(low, item);
+        return low;
+    }
+
+    private SortedLists() {}
+}
@@ -0,0 +1,447 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * List backed by an order-statistic tree (treap with subtree sizes). Positional access,
+ * insertion and removal take O(log n). If comparator is set and the list is sorted by it
+ * {@link #addSorted(Object)}, {@link #indexOf(Object)} and {@link #remove(Object)} also take O(log n).
+ */
+public class SortedTreeList<T> extends AbstractList<T> {
+
+    private static final Random RANDOM = new Random();
+
+    private Node<T> root;
+    private Comparator<? super T> comparator;
+    private boolean sorted = true;
+
+    private Node<T> splitLeft;
+    private Node<T> splitRight;
+
+    public SortedTreeList(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public SortedTreeList(Comparator<? super T> comparator, Collection<? extends T> items) {
+        this(comparator);
+        addAll(items);
+    }
+
+    public Comparator<? super T> getComparator() {
+        return comparator;
+    }
+
+    public void setComparator(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        sorted = checkSorted();
+    }
+
+    /**
+     * @return true if comparator is set and items are in its order.
+     */
+    public boolean isSorted() {
+        return comparator != null && sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void sort() {
+        if (comparator == null || isSorted()) {
+            return;
+        }
+        T[] array = (T[]) toArray();
+        Arrays.sort(array, comparator);
+        root = build(array);
+        sorted = true;
+        modCount++;
+    }
+
+    /**
+     * Inserts item after all items equal to it.
+     * @return position of inserted item.
+     */
+    public int addSorted(T item) {
+        if (!isSorted()) {
+            add(item);
+            return size() - 1;
+        }
+        int position = upperBound(item);
+        insert(position, item);
+        return position;
+    }
+
+    public int lowerBound(T item) {
+        int position = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (comparator.compare(item, node.value) <= 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return position;
+    }
+
+    public int upperBound(T item) {
+        int position = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (comparator.compare(item, node.value) < 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return position;
+    }
+
+    @Override
+    public T get(int index) {
+        return getNode(index).value;
+    }
+
+    @Override
+    public T set(int index, T item) {
+        Node<T> node = getNode(index);
+        T old = node.value;
+        node.value = item;
+        if (sorted && comparator != null) {
+            sorted = isInOrder(index, item, index + 1);
+        }
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public void add(int index, T item) {
+        checkPositionIndex(index);
+        if (sorted && comparator != null) {
+            sorted = isInOrder(index, item, index);
+        }
+        insert(index, item);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean addAll(Collection<? extends T> items) {
+        if (items.isEmpty()) {
+            return false;
+        }
+        if (root == null) {
+            root = build((T[]) items.toArray());
+            sorted = checkSorted();
+            modCount++;
+            return true;
+        }
+        return super.addAll(items);
+    }
+
+    @Override
+    public T remove(int index) {
+        checkElementIndex(index);
+        split(root, index);
+        Node<T> left = splitLeft;
+        split(splitRight, 1);
+        Node<T> removed = splitLeft;
+        root = merge(left, splitRight);
+        splitLeft = splitRight = null;
+        modCount++;
+        return removed.value;
+    }
+
+    @Override
+    public boolean remove(Object item) {
+        int index = indexOf(item);
+        if (index >= 0) {
+            remove(index);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        sorted = true;
+        modCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int indexOf(Object item) {
+        if (!isSorted()) {
+            return super.indexOf(item);
+        }
+
+        T value;
+        try {
+            value = (T) item;
+            int position = lowerBound(value);
+            int size = size();
+            Iterator<T> iterator = iterator(position);
+            while (position < size) {
+                T next = iterator.next();
+                if (comparator.compare(value, next) != 0) {
+                    break;
+                }
+                if (next == item || (next != null && next.equals(item))) {
+                    return position;
+                }
+                position++;
+            }
+            return -1;
+        } catch (ClassCastException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return indexOf(item) >= 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * In-order iterator starting from position.
+     */
+    public Iterator<T> iterator(int position) {
+        checkPositionIndex(position);
+        return new TreeIterator(position);
+    }
+
+    private void insert(int index, T item) {
+        Node<T> node = new Node<>(item, RANDOM.nextInt());
+        split(root, index);
+        root = merge(merge(splitLeft, node), splitRight);
+        splitLeft = splitRight = null;
+        modCount++;
+    }
+
+    /**
+     * @return true if item fits between item before index and item at nextIndex.
+     */
+    private boolean isInOrder(int index, T item, int nextIndex) {
+        if (index > 0 && comparator.compare(get(index - 1), item) > 0) {
+            return false;
+        }
+        return nextIndex >= size() || comparator.compare(item, get(nextIndex)) <= 0;
+    }
+
+    private boolean checkSorted() {
+        if (comparator == null) {
+            return true;
+        }
+        T prev = null;
+        boolean first = true;
+        for (T item : this) {
+            if (!first && comparator.compare(prev, item) > 0) {
+                return false;
+            }
+            first = false;
+            prev = item;
+        }
+        return true;
+    }
+
+    private Node<T> getNode(int index) {
+        checkElementIndex(index);
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private void checkElementIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private void checkPositionIndex(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    /**
+     * Splits tree into splitLeft with first index nodes and splitRight with the rest.
+     */
+    private void split(Node<T> node, int index) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        int leftSize = size(node.left);
+        if (index <= leftSize) {
+            split(node.left, index);
+            node.left = splitRight;
+            node.update();
+            splitRight = node;
+        } else {
+            split(node.right, index - leftSize - 1);
+            node.right = splitLeft;
+            node.update();
+            splitLeft = node;
+        }
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    /**
+     * Builds treap in O(n) with a stack over the right spine.
+     */
+    private Node<T> build(T[] items) {
+        ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+        for (T item : items) {
+            Node<T> node = new Node<>(item, RANDOM.nextInt());
+            Node<T> lastPopped = null;
+            while (!stack.isEmpty() && stack.peek().priority < node.priority) {
+                lastPopped = stack.pop();
+                lastPopped.update();
+            }
+            node.left = lastPopped;
+            if (!stack.isEmpty()) {
+                stack.peek().right = node;
+            }
+            stack.push(node);
+        }
+        Node<T> top = null;
+        while (!stack.isEmpty()) {
+            top = stack.pop();
+            top.update();
+        }
+        return top;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node<T> {
+        T value;
+        final int priority;
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + SortedTreeList.size(left) + SortedTreeList.size(right);
+        }
+    }
+
+    private class TreeIterator implements Iterator<T> {
+        private final ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+        private int expectedModCount = modCount;
+        private int nextIndex;
+        private boolean canRemove;
+
+        TreeIterator(int position) {
+            seek(position);
+        }
+
+        private void seek(int position) {
+            stack.clear();
+            nextIndex = position;
+            Node<T> node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (position < leftSize) {
+                    stack.push(node);
+                    node = node.left;
+                } else if (position == leftSize) {
+                    stack.push(node);
+                    break;
+                } else {
+                    position -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<T> node = stack.pop();
+            Node<T> next = node.right;
+            while (next != null) {
+                stack.push(next);
+                next = next.left;
+            }
+            nextIndex++;
+            canRemove = true;
+            return node.value;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            SortedTreeList.this.remove(nextIndex - 1);
+            seek(nextIndex - 1);
+            expectedModCount = modCount;
+            canRemove = false;
+        }
+    }
+}
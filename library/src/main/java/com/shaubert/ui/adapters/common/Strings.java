@@ -42,5 +42,39 @@ public class Strings {
         }
     }
 
+    /**
+     * @return offset of token in text that is split by spaces or -1 if text has less tokens.
+     */
+    public static int getTokenStart(CharSequence text, int token) {
+        if (token == 0) {
+            return 0;
+        }
+        int spaces = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == ' ' && ++spaces == token) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Variant matches if every its word is contained in some item token.
+     * @return true if every item that matches some of variants matches some of previous variants,
+     * that is when each word of a previous variant is contained in a word of the variant.
+     */
+    public static boolean refinesWordVariants(String[][] variants, String[][] previousVariants) {
+        for (String[] words : variants) {
+            boolean refines = false;
+            for (int i = 0; i < previousVariants.length && !refines; i++) {
+                refines = containsAllQueryWords(words, previousVariants[i]) || previousVariants[i].length == 0;
+            }
+            if (!refines) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Strings() {}
 }
@@ -0,0 +1,398 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage of item tokens. Characters of distinct tokens are kept once in a shared
+ * char array, items are mapped by identity to a range of token ids.
+ */
+public class TokenArena {
+
+    private static final Object NULL_KEY = new Object();
+    private static final int[] EMPTY_TABLE = new int[0];
+
+    private char[] chars = new char[256];
+    private int charsSize;
+    private int[] tokenStarts = new int[32];
+    private int[] tokenLengths = new int[32];
+    private String[] tokenStrings = new String[32];
+    private int tokensCount;
+    private int[] tokenTable = EMPTY_TABLE;
+
+    private final IdentityIntMap slots = new IdentityIntMap();
+    private int[] slotStarts = new int[32];
+    private int[] slotSizes = new int[32];
+    private int slotsCount;
+    private int[] itemTokens = new int[128];
+    private int itemTokensSize;
+    private int garbageSize;
+    private char[] buffer = new char[64];
+
+    public void clear() {
+        charsSize = 0;
+        Arrays.fill(tokenStrings, 0, tokensCount, null);
+        tokensCount = 0;
+        tokenTable = EMPTY_TABLE;
+        slots.clear();
+        slotsCount = 0;
+        itemTokensSize = 0;
+        garbageSize = 0;
+    }
+
+    /**
+     * @return true if item has tokens, then they are loaded into out.
+     */
+    public boolean get(Object item, Tokens out) {
+        int slot = slots.get(key(item), -1);
+        if (slot < 0) {
+            return false;
+        }
+        out.set(this, slot);
+        return true;
+    }
+
+    /**
+     * Stores tokens of text like {@link Tokenizer#split(CharSequence)} does, without creating strings.
+     * Null text has no tokens.
+     */
+    public void put(Object item, CharSequence text, Tokens out) {
+        int slot = startSlot(item);
+
+        if (text != null) {
+            boolean turkicLocale = Tokenizer.isTurkicLocale();
+            int length = text.length();
+            int end = itemTokensSize;
+            int tokenLength = 0;
+            boolean hasSpaces = false;
+            for (int i = 0; i <= length; i++) {
+                char c = i < length ? text.charAt(i) : ' ';
+                if (c == ' ') {
+                    hasSpaces |= i < length;
+                    addItemToken(intern(buffer, 0, tokenLength));
+                    if (tokenLength > 0) {
+                        end = itemTokensSize;
+                    }
+                    tokenLength = 0;
+                } else {
+                    if (tokenLength == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, tokenLength * 2);
+                    }
+                    buffer[tokenLength++] = Tokenizer.toLowerCase(c, turkicLocale);
+                }
+            }
+            if (hasSpaces) {
+                itemTokensSize = end;
+            }
+        }
+        endSlot(item, slot, out);
+    }
+
+    /**
+     * Stores copy of tokens from other arena.
+     */
+    public void put(Object item, Tokens tokens, Tokens out) {
+        int slot = startSlot(item);
+        TokenArena arena = tokens.arena;
+        for (int i = 0; i < tokens.size(); i++) {
+            int tokenId = tokens.tokenId(i);
+            addItemToken(intern(arena.chars, arena.tokenStarts[tokenId], arena.tokenLengths[tokenId]));
+        }
+        endSlot(item, slot, out);
+    }
+
+    /**
+     * @return arena with the same tokens that can be changed independently.
+     */
+    public TokenArena copy() {
+        TokenArena result = new TokenArena();
+        result.chars = Arrays.copyOf(chars, chars.length);
+        result.charsSize = charsSize;
+        result.tokenStarts = Arrays.copyOf(tokenStarts, tokenStarts.length);
+        result.tokenLengths = Arrays.copyOf(tokenLengths, tokenLengths.length);
+        result.tokenStrings = Arrays.copyOf(tokenStrings, tokenStrings.length);
+        result.tokensCount = tokensCount;
+        result.tokenTable = Arrays.copyOf(tokenTable, tokenTable.length);
+        result.slots.putAll(slots);
+        result.slotStarts = Arrays.copyOf(slotStarts, slotStarts.length);
+        result.slotSizes = Arrays.copyOf(slotSizes, slotSizes.length);
+        result.slotsCount = slotsCount;
+        result.itemTokens = Arrays.copyOf(itemTokens, itemTokens.length);
+        result.itemTokensSize = itemTokensSize;
+        result.garbageSize = garbageSize;
+        return result;
+    }
+
+    public void remove(Object item) {
+        int slot = slots.remove(key(item), -1);
+        if (slot >= 0) {
+            garbageSize += slotSizes[slot];
+            if (garbageSize > 1024 && garbageSize > itemTokensSize / 2) {
+                compact();
+            }
+        }
+    }
+
+    private int startSlot(Object item) {
+        remove(item);
+        int slot = slotsCount++;
+        if (slot == slotStarts.length) {
+            slotStarts = Arrays.copyOf(slotStarts, slot * 2);
+            slotSizes = Arrays.copyOf(slotSizes, slot * 2);
+        }
+        slotStarts[slot] = itemTokensSize;
+        return slot;
+    }
+
+    private void endSlot(Object item, int slot, Tokens out) {
+        slotSizes[slot] = itemTokensSize - slotStarts[slot];
+        slots.put(key(item), slot);
+        out.set(this, slot);
+    }
+
+    private void addItemToken(int tokenId) {
+        if (itemTokensSize == itemTokens.length) {
+            itemTokens = Arrays.copyOf(itemTokens, itemTokensSize * 2);
+        }
+        itemTokens[itemTokensSize++] = tokenId;
+    }
+
+    private int intern(char[] token, int start, int length) {
+        if (tokensCount * 2 >= tokenTable.length) {
+            rehashTokens(Math.max(64, tokenTable.length * 2));
+        }
+        int hash = hash(token, start, length);
+        int mask = tokenTable.length - 1;
+        int index = hash & mask;
+        while (tokenTable[index] != 0) {
+            int tokenId = tokenTable[index] - 1;
+            if (equals(tokenId, token, start, length)) {
+                return tokenId;
+            }
+            index = (index + 1) & mask;
+        }
+
+        int tokenId = tokensCount++;
+        if (tokenId == tokenStarts.length) {
+            tokenStarts = Arrays.copyOf(tokenStarts, tokenId * 2);
+            tokenLengths = Arrays.copyOf(tokenLengths, tokenId * 2);
+            tokenStrings = Arrays.copyOf(tokenStrings, tokenId * 2);
+        }
+        if (charsSize + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(charsSize + length, chars.length * 2));
+        }
+        System.arraycopy(token, start, chars, charsSize, length);
+        tokenStarts[tokenId] = charsSize;
+        tokenLengths[tokenId] = length;
+        charsSize += length;
+        tokenTable[index] = tokenId + 1;
+        return tokenId;
+    }
+
+    private boolean equals(int tokenId, char[] token, int start, int length) {
+        if (tokenLengths[tokenId] != length) {
+            return false;
+        }
+        int tokenStart = tokenStarts[tokenId];
+        for (int i = 0; i < length; i++) {
+            if (chars[tokenStart + i] != token[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehashTokens(int capacity) {
+        tokenTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int tokenId = 0; tokenId < tokensCount; tokenId++) {
+            int index = hash(chars, tokenStarts[tokenId], tokenLengths[tokenId]) & mask;
+            while (tokenTable[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            tokenTable[index] = tokenId + 1;
+        }
+    }
+
+    private void compact() {
+        int[] newItemTokens = new int[Math.max(128, itemTokensSize - garbageSize)];
+        int[] newSlotStarts = new int[Math.max(32, slots.size())];
+        int[] newSlotSizes = new int[newSlotStarts.length];
+        int newSize = 0;
+        int newSlotsCount = 0;
+        for (int i = 0; i < slots.capacity(); i++) {
+            if (slots.keyAt(i) != null) {
+                int slot = slots.valueAt(i);
+                int size = slotSizes[slot];
+                System.arraycopy(itemTokens, slotStarts[slot], newItemTokens, newSize, size);
+                newSlotStarts[newSlotsCount] = newSize;
+                newSlotSizes[newSlotsCount] = size;
+                slots.setValueAt(i, newSlotsCount++);
+                newSize += size;
+            }
+        }
+        itemTokens = newItemTokens;
+        itemTokensSize = newSize;
+        slotStarts = newSlotStarts;
+        slotSizes = newSlotSizes;
+        slotsCount = newSlotsCount;
+        garbageSize = 0;
+    }
+
+    private static Object key(Object item) {
+        return item != null ? item : NULL_KEY;
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[start + i];
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reusable view of item tokens. Valid until the arena is changed.
+     */
+    public static class Tokens {
+        private TokenArena arena;
+        private int start;
+        private int size;
+
+        void set(TokenArena arena, int slot) {
+            this.arena = arena;
+            this.start = arena.slotStarts[slot];
+            this.size = arena.slotSizes[slot];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int length(int token) {
+            return arena.tokenLengths[tokenId(token)];
+        }
+
+        public char charAt(int token, int index) {
+            return arena.chars[arena.tokenStarts[tokenId(token)] + index];
+        }
+
+        /**
+         * @return same id for equal tokens of any item.
+         */
+        public int tokenId(int token) {
+            return arena.itemTokens[start + token];
+        }
+
+        public String get(int token) {
+            int tokenId = tokenId(token);
+            String result = arena.tokenStrings[tokenId];
+            if (result == null) {
+                result = new String(arena.chars, arena.tokenStarts[tokenId], arena.tokenLengths[tokenId]);
+                arena.tokenStrings[tokenId] = result;
+            }
+            return result;
+        }
+
+        public String[] toArray() {
+            String[] result = new String[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = get(i);
+            }
+            return result;
+        }
+
+        public boolean contains(int token, String word) {
+            return indexOf(token, word) >= 0;
+        }
+
+        /**
+         * @return offset of the first occurrence of word in token or -1.
+         */
+        public int indexOf(int token, String word) {
+            int tokenId = tokenId(token);
+            char[] chars = arena.chars;
+            int tokenStart = arena.tokenStarts[tokenId];
+            int last = tokenStart + arena.tokenLengths[tokenId] - word.length();
+            int wordLength = word.length();
+            for (int i = tokenStart; i <= last; i++) {
+                int j = 0;
+                while (j < wordLength && chars[i + j] == word.charAt(j)) {
+                    j++;
+                }
+                if (j == wordLength) {
+                    return i - tokenStart;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the first token that contains each word.
+         * @param spans receives token index, offset and length for every word.
+         * @return false if some word is not found, spans are left incomplete then.
+         */
+        public boolean findSpans(String[] words, IntArrayList spans) {
+            if (size == 0) {
+                return false;
+            }
+            for (String word : words) {
+                boolean found = false;
+                for (int token = 0; token < size && !found; token++) {
+                    int offset = indexOf(token, word);
+                    if (offset >= 0) {
+                        spans.add(token);
+                        spans.add(offset);
+                        spans.add(word.length());
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean startsWith(int token, String word) {
+            int tokenId = tokenId(token);
+            if (arena.tokenLengths[tokenId] < word.length()) {
+                return false;
+            }
+            char[] chars = arena.chars;
+            int tokenStart = arena.tokenStarts[tokenId];
+            for (int i = 0; i < word.length(); i++) {
+                if (chars[tokenStart + i] != word.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Same as {@link Strings#containsAllQueryWords(String[], String[])}.
+         */
+        public boolean containsAll(String[] words) {
+            if (size == 0) {
+                return false;
+            }
+            for (String word : words) {
+                boolean found = false;
+                for (int i = 0; i < size; i++) {
+                    if (contains(i, word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
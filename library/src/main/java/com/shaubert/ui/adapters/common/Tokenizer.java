@@ -0,0 +1,62 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text by spaces and folds case char by char, without regular expressions and
+ * intermediate lower case strings.
+ */
+public class Tokenizer {
+
+    public static boolean isTurkicLocale() {
+        String language = Locale.getDefault().getLanguage();
+        return "tr".equals(language) || "az".equals(language);
+    }
+
+    public static char toLowerCase(char c, boolean turkicLocale) {
+        if (c < 128) {
+            if (c >= 'A' && c <= 'Z') {
+                return turkicLocale && c == 'I' ? '\u0131' : (char) (c + ('a' - 'A'));
+            }
+            return c;
+        }
+        if (turkicLocale && c == '\u0130') {
+            return 'i';
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Same as {@code text.toString().toLowerCase(Locale.getDefault()).split(" ")}.
+     */
+    public static String[] split(CharSequence text) {
+        boolean turkicLocale = isTurkicLocale();
+        List<String> tokens = new ArrayList<>();
+        int length = text.length();
+        int lastNonEmptyCount = 0;
+        char[] buffer = new char[length];
+        int tokenLength = 0;
+        boolean hasSpaces = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (c == ' ') {
+                if (i < length) {
+                    hasSpaces = true;
+                }
+                tokens.add(new String(buffer, 0, tokenLength));
+                if (tokenLength > 0) {
+                    lastNonEmptyCount = tokens.size();
+                }
+                tokenLength = 0;
+            } else {
+                buffer[tokenLength++] = toLowerCase(c, turkicLocale);
+            }
+        }
+        int count = hasSpaces ? lastNonEmptyCount : tokens.size();
+        return tokens.subList(0, count).toArray(new String[count]);
+    }
+
+    private Tokenizer() {}
+}
@@ -0,0 +1,239 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from 3-character substrings of item tokens to ascending item indices.
+ * Token contains a word only if it contains every trigram of the word, so intersection
+ * of their postings gives a small set of candidates that should be checked.
+ */
+public class TrigramIndex {
+
+    public static final int GRAM_LENGTH = 3;
+
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_POSTING_CAPACITY = 4;
+
+    private final LongIntMap gramIds = new LongIntMap();
+    private int[][] postings = new int[16][];
+    private int[] postingSizes = new int[16];
+    private int gramsCount;
+
+    public void clear() {
+        gramIds.clear();
+        postings = new int[16][];
+        postingSizes = new int[16];
+        gramsCount = 0;
+    }
+
+    /**
+     * Adds tokens of item. Items must be added in ascending order of indices.
+     */
+    public void add(int itemIndex, TokenArena.Tokens tokens) {
+        for (int token = 0; token < tokens.size(); token++) {
+            int length = tokens.length(token);
+            for (int i = 0; i + GRAM_LENGTH <= length; i++) {
+                addPosting(gramKey(tokens, token, i), itemIndex);
+            }
+        }
+    }
+
+    /**
+     * Adds tokens of item in any order, for example after item was replaced. Takes O(p) for every trigram,
+     * where p is the size of its posting.
+     */
+    public void insert(int itemIndex, TokenArena.Tokens tokens) {
+        for (int token = 0; token < tokens.size(); token++) {
+            int length = tokens.length(token);
+            for (int i = 0; i + GRAM_LENGTH <= length; i++) {
+                insertPosting(gramKey(tokens, token, i), itemIndex);
+            }
+        }
+    }
+
+    /**
+     * Removes item from postings of its tokens, tokens must be the same as were added for it.
+     */
+    public void remove(int itemIndex, TokenArena.Tokens tokens) {
+        for (int token = 0; token < tokens.size(); token++) {
+            int length = tokens.length(token);
+            for (int i = 0; i + GRAM_LENGTH <= length; i++) {
+                int id = gramIds.get(gramKey(tokens, token, i), -1);
+                if (id < 0) {
+                    continue;
+                }
+                int size = postingSizes[id];
+                int found = Arrays.binarySearch(postings[id], 0, size, itemIndex);
+                if (found >= 0) {
+                    System.arraycopy(postings[id], found + 1, postings[id], found, size - found - 1);
+                    postingSizes[id] = size - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return ascending indices of items that can contain word or null if word is shorter than
+     * {@link #GRAM_LENGTH} and any item can contain it.
+     */
+    public int[] findCandidates(String word) {
+        if (word.length() < GRAM_LENGTH) {
+            return null;
+        }
+
+        int gramsInWord = word.length() - GRAM_LENGTH + 1;
+        int[] ids = new int[gramsInWord];
+        for (int i = 0; i < gramsInWord; i++) {
+            int id = gramIds.get(gramKey(word, i), -1);
+            if (id < 0) {
+                return EMPTY;
+            }
+            ids[i] = id;
+        }
+        sortBySize(ids);
+
+        int[] result = Arrays.copyOf(postings[ids[0]], postingSizes[ids[0]]);
+        int size = result.length;
+        for (int i = 1; i < ids.length && size > 0; i++) {
+            if (ids[i] != ids[i - 1]) {
+                size = intersect(result, size, postings[ids[i]], postingSizes[ids[i]]);
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return ascending items that are in both ascending arrays.
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length);
+        int size = intersect(result, result.length, b, b.length);
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return ascending items that are in any of ascending arrays.
+     */
+    public static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            int value;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                value = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                value = b[j++];
+            } else {
+                value = a[i++];
+                j++;
+            }
+            result[size++] = value;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Keeps items of target that are in items. Binary search is used when items are much longer than target.
+     * @return new size of target.
+     */
+    private static int intersect(int[] target, int targetSize, int[] items, int itemsSize) {
+        int size = 0;
+        if (itemsSize > targetSize * 8) {
+            int from = 0;
+            for (int i = 0; i < targetSize && from < itemsSize; i++) {
+                int found = Arrays.binarySearch(items, from, itemsSize, target[i]);
+                if (found >= 0) {
+                    target[size++] = target[i];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+        } else {
+            int j = 0;
+            for (int i = 0; i < targetSize && j < itemsSize; i++) {
+                while (j < itemsSize && items[j] < target[i]) {
+                    j++;
+                }
+                if (j < itemsSize && items[j] == target[i]) {
+                    target[size++] = target[i];
+                    j++;
+                }
+            }
+        }
+        return size;
+    }
+
+    private void addPosting(long key, int itemIndex) {
+        int id = getGramId(key);
+        int size = postingSizes[id];
+        int[] posting = postings[id];
+        if (size > 0 && posting[size - 1] == itemIndex) {
+            return;
+        }
+        if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size * 2);
+            postings[id] = posting;
+        }
+        posting[size] = itemIndex;
+        postingSizes[id] = size + 1;
+    }
+
+    private void insertPosting(long key, int itemIndex) {
+        int id = getGramId(key);
+        int size = postingSizes[id];
+        int found = Arrays.binarySearch(postings[id], 0, size, itemIndex);
+        if (found >= 0) {
+            return;
+        }
+        int insertion = -found - 1;
+        int[] posting = postings[id];
+        if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size * 2);
+            postings[id] = posting;
+        }
+        System.arraycopy(posting, insertion, posting, insertion + 1, size - insertion);
+        posting[insertion] = itemIndex;
+        postingSizes[id] = size + 1;
+    }
+
+    private int getGramId(long key) {
+        int id = gramIds.get(key, -1);
+        if (id < 0) {
+            id = gramsCount++;
+            if (id == postings.length) {
+                postings = Arrays.copyOf(postings, id * 2);
+                postingSizes = Arrays.copyOf(postingSizes, id * 2);
+            }
+            postings[id] = new int[INITIAL_POSTING_CAPACITY];
+            gramIds.put(key, id);
+        }
+        return id;
+    }
+
+    private void sortBySize(int[] ids) {
+        for (int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= 0 && postingSizes[ids[j]] > postingSizes[id]) {
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            ids[j + 1] = id;
+        }
+    }
+
+    private static long gramKey(TokenArena.Tokens tokens, int token, int start) {
+        return ((long) tokens.charAt(token, start) << 32)
+                | ((long) tokens.charAt(token, start + 1) << 16)
+                | tokens.charAt(token, start + 2);
+    }
+
+    private static long gramKey(String s, int start) {
+        return ((long) s.charAt(start) << 32)
+                | ((long) s.charAt(start + 1) << 16)
+                | s.charAt(start + 2);
+    }
+}
@@ -0,0 +1,207 @@
+package com.shaubert.ui.adapters.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over words of query variants. Item matches if every word of some variant
+ * is contained in one of item tokens. Tokens are scanned once regardless of the number of words and variants.
+ */
+public class WordsMatcher {
+
+    private static final int ROOT = 0;
+
+    private final char[] alphabet;
+    private final int[] asciiClasses = new int[128];
+    private final int classesCount;
+    private final int[] transitions;
+    private final int maskLength;
+    private final long[] outputs;
+    private final long[][] variantMasks;
+
+    /**
+     * @param variants lower case words of every variant. Variant without words matches any item with tokens.
+     */
+    public WordsMatcher(String[][] variants) {
+        Map<String, Integer> wordIds = new HashMap<>();
+        StringBuilder chars = new StringBuilder();
+        for (String[] words : variants) {
+            for (String word : words) {
+                if (!wordIds.containsKey(word)) {
+                    wordIds.put(word, wordIds.size());
+                    chars.append(word);
+                }
+            }
+        }
+        alphabet = distinctChars(chars);
+        classesCount = alphabet.length + 1;
+        for (int i = 0; i < alphabet.length && alphabet[i] < 128; i++) {
+            asciiClasses[alphabet[i]] = i + 1;
+        }
+        maskLength = Math.max(1, (wordIds.size() + 63) / 64);
+
+        variantMasks = new long[variants.length][maskLength];
+        for (int v = 0; v < variants.length; v++) {
+            for (String word : variants[v]) {
+                setBit(variantMasks[v], 0, wordIds.get(word));
+            }
+        }
+
+        int maxStates = chars.length() + 1;
+        int[] trie = new int[maxStates * classesCount];
+        Arrays.fill(trie, -1);
+        long[] trieOutputs = new long[maxStates * maskLength];
+        int statesCount = 1;
+        for (Map.Entry<String, Integer> entry : wordIds.entrySet()) {
+            String word = entry.getKey();
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                int index = state * classesCount + classOf(word.charAt(i));
+                if (trie[index] < 0) {
+                    trie[index] = statesCount++;
+                }
+                state = trie[index];
+            }
+            setBit(trieOutputs, state * maskLength, entry.getValue());
+        }
+
+        transitions = Arrays.copyOf(trie, statesCount * classesCount);
+        outputs = Arrays.copyOf(trieOutputs, statesCount * maskLength);
+        buildFailureTransitions(statesCount);
+    }
+
+    private void buildFailureTransitions(int statesCount) {
+        int[] fail = new int[statesCount];
+        int[] queue = new int[statesCount];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classesCount; c++) {
+            int child = transitions[c];
+            if (child < 0) {
+                transitions[c] = ROOT;
+            } else {
+                fail[child] = ROOT;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < maskLength; i++) {
+                outputs[state * maskLength + i] |= outputs[fail[state] * maskLength + i];
+            }
+            for (int c = 0; c < classesCount; c++) {
+                int index = state * classesCount + c;
+                int child = transitions[index];
+                int fallback = transitions[fail[state] * classesCount + c];
+                if (child < 0) {
+                    transitions[index] = fallback;
+                } else {
+                    fail[child] = fallback;
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    public boolean matches(TokenArena.Tokens tokens) {
+        int size = tokens.size();
+        if (size == 0) {
+            return false;
+        }
+        if (maskLength == 1) {
+            long found = outputs[ROOT];
+            for (int token = 0; token < size; token++) {
+                int state = ROOT;
+                int length = tokens.length(token);
+                for (int i = 0; i < length; i++) {
+                    state = transitions[state * classesCount + classOf(tokens.charAt(token, i))];
+                    found |= outputs[state];
+                }
+                if (isVariantFound(found)) {
+                    return true;
+                }
+            }
+            return isVariantFound(found);
+        }
+
+        long[] found = Arrays.copyOf(outputs, maskLength);
+        for (int token = 0; token < size; token++) {
+            int state = ROOT;
+            int length = tokens.length(token);
+            for (int i = 0; i < length; i++) {
+                state = transitions[state * classesCount + classOf(tokens.charAt(token, i))];
+                addOutputs(found, state);
+            }
+        }
+        return isVariantFound(found);
+    }
+
+    public boolean matches(String[] tokens) {
+        if (tokens == null || tokens.length == 0) {
+            return false;
+        }
+        long[] found = Arrays.copyOf(outputs, maskLength);
+        for (String token : tokens) {
+            int state = ROOT;
+            for (int i = 0; i < token.length(); i++) {
+                state = transitions[state * classesCount + classOf(token.charAt(i))];
+                addOutputs(found, state);
+            }
+        }
+        return isVariantFound(found);
+    }
+
+    private void addOutputs(long[] found, int state) {
+        int start = state * maskLength;
+        for (int i = 0; i < maskLength; i++) {
+            found[i] |= outputs[start + i];
+        }
+    }
+
+    private boolean isVariantFound(long found) {
+        for (long[] mask : variantMasks) {
+            if ((found & mask[0]) == mask[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isVariantFound(long[] found) {
+        for (long[] mask : variantMasks) {
+            boolean variantFound = true;
+            for (int i = 0; i < maskLength && variantFound; i++) {
+                variantFound = (found[i] & mask[i]) == mask[i];
+            }
+            if (variantFound) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(alphabet, c);
+        return index >= 0 ? index + 1 : 0;
+    }
+
+    private static char[] distinctChars(CharSequence chars) {
+        char[] result = chars.toString().toCharArray();
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (size == 0 || result[size - 1] != result[i]) {
+                result[size++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static void setBit(long[] mask, int offset, int bit) {
+        mask[offset + (bit >>> 6)] |= 1L << (bit & 63);
+    }
+}
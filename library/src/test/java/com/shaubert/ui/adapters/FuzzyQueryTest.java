@@ -0,0 +1,100 @@
+package com.shaubert.ui.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.shaubert.ui.adapters.common.TokenArena;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyQueryTest {
+
+    private final TokenArena arena = new TokenArena();
+
+    private static class StringAdapter extends ListAdapter<String> {
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        protected View createNormalView(String item, int pos, ViewGroup parent, LayoutInflater inflater) {
+            return null;
+        }
+
+        @Override
+        protected void bindNormalView(View view, String item, int pos) {
+        }
+    }
+
+    @Test
+    public void exactTokensAreRankedBeforePrefixesAndSubstrings() {
+        FuzzyQuery query = new FuzzyQuery("cat");
+
+        assertEquals(FuzzyQuery.SCORE_EXACT, score(query, "black cat"));
+        assertEquals(FuzzyQuery.SCORE_PREFIX, score(query, "catalog"));
+        assertEquals(FuzzyQuery.SCORE_WORD_START, score(query, "big catalog"));
+        assertEquals(FuzzyQuery.SCORE_SUBSTRING, score(query, "concat"));
+        assertEquals(0, score(query, "dog"));
+    }
+
+    @Test
+    public void longWordsMayHaveTypos() {
+        assertEquals(FuzzyQuery.SCORE_ONE_TYPO, score(new FuzzyQuery("kiten"), "kitten"));
+        assertEquals(FuzzyQuery.SCORE_ONE_TYPO, score(new FuzzyQuery("ktiten"), "kitten"));
+        assertEquals(FuzzyQuery.SCORE_TWO_TYPOS, score(new FuzzyQuery("elepahmt"), "elephant"));
+        assertEquals(0, score(new FuzzyQuery("dgo"), "dog"));
+        assertEquals(0, score(new FuzzyQuery("kiten"), "kettle"));
+    }
+
+    @Test
+    public void everyWordShouldMatch() {
+        FuzzyQuery query = new FuzzyQuery("red cat");
+
+        assertEquals(FuzzyQuery.SCORE_PREFIX + FuzzyQuery.SCORE_EXACT, score(query, "redish cat"));
+        assertEquals(0, score(query, "red dog"));
+        assertTrue(query.match(tokens("cat red")));
+        assertFalse(query.match(tokens("cat")));
+    }
+
+    @Test
+    public void spansPointToBestTokens() {
+        FuzzyQuery query = new FuzzyQuery("cat kiten");
+
+        assertArrayEquals(new int[] {1, 3, 3, 0, 0, 5}, query.findSpans(tokens("kitten concat")));
+        assertNull(query.findSpans(tokens("kitten")));
+    }
+
+    @Test
+    public void adapterShowsBestItemsFirst() {
+        StringAdapter adapter = new StringAdapter();
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.addItems(Arrays.asList("concat", "big catalog", "dog", "cat", "catalog", "black cat"), false);
+
+        adapter.setFilterQuery(new FuzzyQuery("cat"));
+        assertEquals(Arrays.asList("cat", "black cat", "catalog", "big catalog", "concat"),
+                adapter.getReadOnlyItems());
+
+        adapter.clearFilter();
+        assertEquals(6, adapter.getCount());
+    }
+
+    private int score(FuzzyQuery query, String text) {
+        return query.score(tokens(text));
+    }
+
+    private TokenArena.Tokens tokens(String text) {
+        TokenArena.Tokens tokens = new TokenArena.Tokens();
+        arena.put(new Object(), text, tokens);
+        return tokens;
+    }
+}
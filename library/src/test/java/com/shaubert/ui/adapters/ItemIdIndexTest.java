@@ -0,0 +1,121 @@
+package com.shaubert.ui.adapters;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemIdIndexTest {
+
+    private List<Long> items;
+    private ItemIdIndex<Long> index;
+    private int idRequests;
+
+    @Before
+    public void setUp() {
+        items = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            items.add(i * 10);
+        }
+        index = new ItemIdIndex<>(new ItemIdIndex.IdProvider<Long>() {
+            @Override
+            public long getItemId(Long item) {
+                idRequests++;
+                return item;
+            }
+        });
+    }
+
+    @Test
+    public void findsAllItems() {
+        assertPositions();
+    }
+
+    @Test
+    public void frontInsertShiftsPositionsWithoutReindexing() {
+        assertPositions();
+
+        items.add(0, -10L);
+        idRequests = 0;
+        index.onInserted(items, 0);
+        assertPositions();
+        assertEquals(1 + items.size(), idRequests);
+    }
+
+    @Test
+    public void scatteredInsertsShiftPositions() {
+        assertPositions();
+
+        items.add(0, -10L);
+        items.add(2, 5L);
+        items.add(50, 475L);
+        items.add(-5L);
+        index.onInserted(items, new int[] {0, 2, 50, items.size() - 1});
+        assertPositions();
+    }
+
+    @Test
+    public void frontRemoveShiftsPositionsWithoutReindexing() {
+        assertPositions();
+
+        Long removed = items.remove(0);
+        index.onRemoved(removed, 0);
+        idRequests = 0;
+        assertPositions();
+        assertEquals(items.size(), idRequests);
+        assertEquals(-1, index.getPosition(items, removed));
+    }
+
+    @Test
+    public void appendedItemsAreIndexedOnLookup() {
+        assertPositions();
+
+        items.add(2000L);
+        index.onInserted(items, items.size() - 1);
+        items.add(0, 1000L);
+        index.onInserted(items, 0);
+        assertPositions();
+    }
+
+    @Test
+    public void insertsAndRemovesBeforeFirstLookup() {
+        items.add(0, -10L);
+        index.onInserted(items, 0);
+        Long removed = items.remove(10);
+        index.onRemoved(removed, 10);
+        assertPositions();
+    }
+
+    @Test
+    public void matchesListAfterRandomChanges() {
+        Random random = new Random(5);
+        long nextItem = 10000;
+        assertPositions();
+        for (int step = 0; step < 2000; step++) {
+            if (random.nextBoolean() || items.isEmpty()) {
+                int position = random.nextInt(items.size() + 1);
+                items.add(position, nextItem++);
+                index.onInserted(items, position);
+            } else {
+                int position = random.nextInt(items.size());
+                index.onRemoved(items.remove(position), position);
+            }
+            if (step % 100 == 0) {
+                assertPositions();
+            }
+        }
+        idRequests = 0;
+        assertPositions();
+        assertEquals(items.size(), idRequests);
+    }
+
+    private void assertPositions() {
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i, index.getPosition(items, items.get(i)));
+        }
+    }
+}
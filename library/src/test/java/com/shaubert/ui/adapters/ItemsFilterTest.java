@@ -0,0 +1,225 @@
+package com.shaubert.ui.adapters;
+
+import com.shaubert.ui.adapters.common.Generation;
+import com.shaubert.ui.adapters.common.IntArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ItemsFilterTest {
+
+    private static final int ITEMS_COUNT = 1000;
+
+    private static final ItemsFilter.Facet<String> EVEN = new ItemsFilter.Facet<String>() {
+        @Override
+        public boolean isItemMatched(String item) {
+            return (item.charAt(item.length() - 1) - '0') % 2 == 0;
+        }
+    };
+
+    private ExecutorService executor;
+    private ItemsFilter<String> itemsFilter;
+    private List<String> items;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        itemsFilter = new ItemsFilter<>();
+        itemsFilter.setParallelEnabled(true);
+        itemsFilter.setParallelThreshold(100);
+        itemsFilter.setParallelExecutor(executor);
+        items = new ArrayList<>();
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            items.add((i % 3 == 0 ? "cat " : "dog ") + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void parallelMatchesAreTheSameAsSerial() {
+        SimpleQuery query = new SimpleQuery("cat");
+
+        long[] matches = itemsFilter.findMatchesInParallel(items, query, null, null, 0);
+        long[] cachedMatches = itemsFilter.findMatchesInParallel(items, query, null, null, 0);
+
+        itemsFilter.setQuery(query);
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            boolean expected = itemsFilter.isItemMatchQuery(items.get(i));
+            assertEquals(expected, isSet(matches, i));
+            assertEquals(expected, isSet(cachedMatches, i));
+        }
+    }
+
+    @Test
+    public void itemMatcherIsCalledForEveryItem() {
+        ItemsFilter.Facet<String> evenCats = new ItemsFilter.Facet<String>() {
+            @Override
+            public boolean isItemMatched(String item) {
+                return itemsFilter.isItemMatchQuery(item) && item.endsWith("0");
+            }
+        };
+
+        long[] matches = itemsFilter.findMatchesInParallel(items, new SimpleQuery("cat"), evenCats, null, 0);
+
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            assertEquals(i % 3 == 0 && i % 10 == 0, isSet(matches, i));
+        }
+    }
+
+    @Test
+    public void outdatedGenerationStopsMatching() {
+        Generation generation = new Generation();
+        int expected = generation.next();
+        generation.invalidate();
+
+        assertNull(itemsFilter.findMatchesInParallel(items, new SimpleQuery("cat"), null, generation, expected));
+    }
+
+    @Test
+    public void filterIsNotLockedWhileMatching() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ItemsFilter.Facet<String> blockingMatcher = new ItemsFilter.Facet<String>() {
+            @Override
+            public boolean isItemMatched(String item) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return itemsFilter.isItemMatchQuery(item);
+            }
+        };
+        final AtomicReference<long[]> result = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(itemsFilter.findMatchesInParallel(items, new SimpleQuery("cat"), blockingMatcher, null, 0));
+            }
+        });
+        thread.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        itemsFilter.setQuery(new SimpleQuery("dog"));
+        assertNotNull(itemsFilter.getMatchSpans(items.get(1)));
+        itemsFilter.clearCache();
+        release.countDown();
+        thread.join(5000);
+
+        long[] matches = result.get();
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            assertEquals(i % 3 == 0, isSet(matches, i));
+        }
+    }
+
+    @Test
+    public void facetMatchesAreCheckedWithItemMatcher() {
+        itemsFilter.addFacet("parity", EVEN);
+        ItemsFilter.Facet<String> tens = new ItemsFilter.Facet<String>() {
+            @Override
+            public boolean isItemMatched(String item) {
+                return itemsFilter.isItemMatchQuery(item) && item.endsWith("0");
+            }
+        };
+
+        long[] matches = itemsFilter.findMatches(items, 0, new SimpleQuery("cat"), tens);
+
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            assertEquals(i % 3 == 0 && i % 10 == 0, isSet(matches, i));
+        }
+    }
+
+    @Test
+    public void filterIsNotLockedWhileFacetMatchesAreChecked() throws Exception {
+        itemsFilter.addFacet("parity", EVEN);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ItemsFilter.Facet<String> blockingMatcher = new ItemsFilter.Facet<String>() {
+            @Override
+            public boolean isItemMatched(String item) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return itemsFilter.isItemMatchQuery(item);
+            }
+        };
+        final AtomicReference<long[]> result = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(itemsFilter.findMatches(items, 0, new SimpleQuery("cat"), blockingMatcher));
+            }
+        });
+        thread.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        itemsFilter.setQuery(new SimpleQuery("dog"));
+        assertNotNull(itemsFilter.getMatchSpans(items.get(4)));
+        release.countDown();
+        thread.join(5000);
+
+        long[] matches = result.get();
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            assertEquals(i % 3 == 0 && i % 2 == 0, isSet(matches, i));
+        }
+    }
+
+    @Test
+    public void replacedItemUpdatesOnlyItsTokensFacetsAndIndex() {
+        final int[] tokenized = new int[1];
+        ItemsFilter<String> countingFilter = new ItemsFilter<String>() {
+            @Override
+            protected String itemToString(String item) {
+                tokenized[0]++;
+                return item;
+            }
+        };
+        countingFilter.setIndexEnabled(true);
+        countingFilter.addFacet("parity", EVEN);
+        SimpleQuery query = new SimpleQuery("cat");
+        countingFilter.setQuery(query);
+        countingFilter.findCandidates(items, 0, new IntArrayList());
+        countingFilter.findMatches(items, 0, query);
+        int filterVersion = countingFilter.getVersion();
+
+        String oldItem = items.set(4, "cat 4");
+        tokenized[0] = 0;
+        countingFilter.onItemReplaced(4, oldItem, "cat 4", 0, 1);
+        IntArrayList candidates = new IntArrayList();
+        assertTrue(countingFilter.findCandidates(items, 1, candidates));
+        long[] matches = countingFilter.findMatches(items, 1, query);
+
+        assertEquals(1, tokenized[0]);
+        assertEquals(filterVersion, countingFilter.getVersion());
+        assertEquals(ITEMS_COUNT / 3 + 2, candidates.size());
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            assertEquals((i % 3 == 0 || i == 4) && i % 2 == 0, isSet(matches, i));
+        }
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+}
@@ -0,0 +1,185 @@
+package com.shaubert.ui.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListAdapterTest {
+
+    private static class EvenAdapter extends ListAdapter<Integer> {
+        @Override
+        protected boolean isItemMatched(Integer item) {
+            return item % 2 == 0;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position);
+        }
+
+        @Override
+        protected View createNormalView(Integer item, int pos, ViewGroup parent, LayoutInflater inflater) {
+            return null;
+        }
+
+        @Override
+        protected void bindNormalView(View view, Integer item, int pos) {
+        }
+    }
+
+    private static class StringAdapter extends ListAdapter<String> {
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        protected View createNormalView(String item, int pos, ViewGroup parent, LayoutInflater inflater) {
+            return null;
+        }
+
+        @Override
+        protected void bindNormalView(View view, String item, int pos) {
+        }
+    }
+
+    private static class BlockingAdapter extends StringAdapter {
+        final Set<String> blocked = new HashSet<>();
+
+        @Override
+        protected boolean isItemMatched(String item) {
+            return !blocked.contains(item) && super.isItemMatched(item);
+        }
+    }
+
+    private static final ItemsFilter.Normalizer K_TO_C = new ItemsFilter.Normalizer() {
+        @Override
+        public String normalize(String text) {
+            return text.replace('k', 'c');
+        }
+    };
+
+    @Test
+    public void appendedItemsAreMatchedWithoutItemsFilter() {
+        EvenAdapter adapter = new EvenAdapter();
+
+        adapter.addItems(Arrays.asList(1, 2, 3, 4), false);
+        adapter.addItems(Arrays.asList(5, 6), false);
+
+        assertEquals(Arrays.asList(2, 4, 6), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void appendedItemsAreMatchedAfterItemsFilterIsRemoved() {
+        EvenAdapter adapter = new EvenAdapter();
+        adapter.setItemsFilter(new ItemsFilter<Integer>());
+        adapter.addItems(Arrays.asList(1, 2));
+        assertEquals(Arrays.asList(1, 2), adapter.getReadOnlyItems());
+
+        adapter.setItemsFilter(null);
+        adapter.addItems(Arrays.asList(3, 4), false);
+
+        assertEquals(Arrays.asList(1, 2, 4), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void refinedQueryIsFilteredAgainAfterNormalizerIsAdded() {
+        StringAdapter adapter = new StringAdapter();
+        ItemsFilter<String> itemsFilter = new ItemsFilter<>();
+        adapter.setItemsFilter(itemsFilter);
+        adapter.addItems(Arrays.asList("kat", "cat", "dog"), false);
+        adapter.setFilterQuery("ca");
+        assertEquals(Arrays.asList("cat"), adapter.getReadOnlyItems());
+
+        itemsFilter.addNormalizer(K_TO_C);
+        adapter.setFilterQuery("cat");
+
+        assertEquals(Arrays.asList("kat", "cat"), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void refinedQueryIsFilteredAgainAfterItemsFilterIsReplaced() {
+        StringAdapter adapter = new StringAdapter();
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.addItems(Arrays.asList("kat", "cat", "dog"), false);
+        adapter.setFilterQuery("ca");
+        assertEquals(Arrays.asList("cat"), adapter.getReadOnlyItems());
+
+        ItemsFilter<String> itemsFilter = new ItemsFilter<>();
+        itemsFilter.addNormalizer(K_TO_C);
+        adapter.setItemsFilter(itemsFilter);
+        adapter.setFilterQuery("cat");
+
+        assertEquals(Arrays.asList("kat", "cat"), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void replacedItemsAreFilteredWithoutResort() {
+        StringAdapter adapter = new StringAdapter();
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.addItems(Arrays.asList("cat", "dog", "car", "cap"), false);
+        adapter.setFilterQuery("ca");
+        assertEquals(Arrays.asList("cat", "car", "cap"), adapter.getReadOnlyItems());
+
+        adapter.replaceAll(Arrays.asList("cab", "owl"), false);
+
+        assertEquals(Arrays.asList("cab"), adapter.getReadOnlyItems());
+        assertEquals(1, adapter.getCount());
+    }
+
+    @Test
+    public void overriddenMatchIsCheckedWhenQueryIsRepeated() {
+        BlockingAdapter adapter = new BlockingAdapter();
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.addItems(Arrays.asList("cat", "dog", "car"), false);
+        adapter.setFilterQuery("ca");
+        adapter.clearFilter();
+
+        adapter.blocked.add("cat");
+        adapter.setFilterQuery("ca");
+
+        assertEquals(Arrays.asList("car"), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void refilterDoesNotRefineCurrentResult() {
+        BlockingAdapter adapter = new BlockingAdapter();
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.addItems(Arrays.asList("cat", "dog", "car"), false);
+        adapter.blocked.add("cat");
+        adapter.setFilterQuery("ca");
+        assertEquals(Arrays.asList("car"), adapter.getReadOnlyItems());
+
+        adapter.blocked.clear();
+        adapter.refilter();
+
+        assertEquals(Arrays.asList("cat", "car"), adapter.getReadOnlyItems());
+    }
+
+    @Test
+    public void overriddenMatchIsCheckedWithFacets() {
+        BlockingAdapter adapter = new BlockingAdapter();
+        ItemsFilter<String> itemsFilter = new ItemsFilter<>();
+        itemsFilter.addFacet("animal", new ItemsFilter.Facet<String>() {
+            @Override
+            public boolean isItemMatched(String item) {
+                return !item.equals("dog");
+            }
+        });
+        adapter.setItemsFilter(itemsFilter);
+        adapter.blocked.add("cow");
+
+        adapter.addItems(Arrays.asList("cat", "dog", "cow", "car"), false);
+        adapter.setFilterQuery("c");
+
+        assertEquals(Arrays.asList("cat", "car"), adapter.getReadOnlyItems());
+    }
+}
@@ -0,0 +1,141 @@
+package com.shaubert.ui.adapters;
+
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecyclerAdapterTest {
+
+    private static class StringAdapter extends RecyclerAdapter<String, RecyclerView.ViewHolder> {
+        final List<List<String>> prepared = new ArrayList<>();
+        Runnable onMatch;
+        int matchCount;
+
+        @Override
+        protected boolean isItemMatched(String item) {
+            matchCount++;
+            if (onMatch != null) {
+                Runnable action = onMatch;
+                onMatch = null;
+                action.run();
+            }
+            return super.isItemMatched(item);
+        }
+
+        @Override
+        protected Object prepareDataSet(List<String> items) {
+            prepared.add(new ArrayList<>(items));
+            return super.prepareDataSet(items);
+        }
+
+        @Override
+        public int getItemViewType(String item) {
+            return 0;
+        }
+
+        @Override
+        public long getItemId(String item) {
+            return item.hashCode();
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+    }
+
+    /**
+     * Runs tasks only when asked, so several requests can be made before any of them starts.
+     */
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private final QueuedExecutor executor = new QueuedExecutor();
+    private StringAdapter adapter;
+
+    @Before
+    public void setUp() {
+        adapter = new StringAdapter();
+        adapter.setNotifyOnChange(false);
+        adapter.setItemsFilter(new ItemsFilter<String>());
+        adapter.setDiffExecutor(executor);
+    }
+
+    @Test
+    public void newerFilterQueryDropsOlderOne() {
+        adapter.replaceAll(Arrays.asList("cat", "dog", "car"), false);
+        adapter.setAsyncMode(true);
+
+        adapter.setFilterQuery("ca");
+        adapter.setFilterQuery("do");
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList("dog")), adapter.prepared);
+    }
+
+    @Test
+    public void filterStopsWhenNewerQueryComes() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add((i % 2 == 0 ? "cat " : "dog ") + i);
+        }
+        adapter.replaceAll(items, false);
+        adapter.setAsyncMode(true);
+        adapter.matchCount = 0;
+        adapter.onMatch = new Runnable() {
+            @Override
+            public void run() {
+                adapter.setFilterQuery("dog");
+            }
+        };
+
+        adapter.setFilterQuery("cat");
+        executor.tasks.remove(0).run();
+
+        assertTrue(adapter.matchCount < items.size());
+        assertTrue(adapter.prepared.isEmpty());
+        executor.runAll();
+        assertEquals(1, adapter.prepared.size());
+        assertEquals(items.size() / 2, adapter.prepared.get(0).size());
+        assertTrue(adapter.prepared.get(0).get(0).startsWith("dog"));
+    }
+
+    @Test
+    public void replacedItemsDropPendingRequests() {
+        adapter.setAsyncMode(true);
+
+        adapter.replaceAll(Arrays.asList("cat", "dog"), false);
+        adapter.setFilterQuery("ca");
+        adapter.replaceAll(Arrays.asList("car", "cow"), false);
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList("car")), adapter.prepared);
+    }
+}
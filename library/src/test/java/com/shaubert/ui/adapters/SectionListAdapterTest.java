@@ -0,0 +1,108 @@
+package com.shaubert.ui.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SectionListAdapterTest {
+
+    private static class FirstLetterAdapter extends SectionListAdapter<String> {
+        @Override
+        protected View createNormalView(String item, int pos, ViewGroup parent, LayoutInflater inflater) {
+            return null;
+        }
+
+        @Override
+        protected void bindNormalView(View view, String item, int pos) {
+        }
+    }
+
+    private FirstLetterAdapter adapter;
+    private int sectionLength;
+
+    private SimpleIndexer<String> indexer;
+
+    @Before
+    public void setUp() {
+        adapter = new FirstLetterAdapter();
+        sectionLength = 1;
+        indexer = new SimpleIndexer<>(new SimpleIndexer.SectionRetriever<String>() {
+            @Override
+            public Object getSectionFrom(String item) {
+                return item.substring(0, sectionLength);
+            }
+        }, adapter);
+        adapter.setSectionIndexer(indexer);
+        adapter.setItemsFilter(new ItemsFilter<String>());
+    }
+
+    @Test
+    public void matchSpansAreEmptyForHeaders() {
+        adapter.addItems(Arrays.asList("apple", "banana", "cherry"));
+        adapter.setFilterQuery("an");
+
+        assertEquals(2, adapter.getCount());
+        assertArrayEquals(new int[0], adapter.getMatchSpans(0));
+        assertArrayEquals(new int[] {0, 1, 2}, adapter.getMatchSpans(1));
+    }
+
+    @Test
+    public void replacedItemsGetNewSectionsWithoutResort() {
+        adapter.addItems(Arrays.asList("apple", "banana", "cherry"));
+
+        adapter.replaceAll(Arrays.asList("date", "egg"), false);
+
+        assertEquals(4, adapter.getCount());
+        assertArrayEquals(new Object[] {"d", "e"}, adapter.getSections());
+        assertEquals("date", adapter.getItem(1));
+        assertEquals("egg", adapter.getItem(3));
+    }
+
+    @Test
+    public void replacedItemsAreNotTakenFromSectionsCache() {
+        String apple = "apple";
+        String apricot = "apricot";
+        adapter.addItems(Arrays.asList(apple, apricot));
+        assertArrayEquals(new Object[] {"a"}, adapter.getSections());
+
+        sectionLength = 2;
+        adapter.replaceAll(Arrays.asList(apple, apricot), false);
+
+        assertArrayEquals(new Object[] {"ap"}, adapter.getSections());
+    }
+
+    @Test
+    public void sectionsAreNotMemoizedByDefault() {
+        adapter.addItems(Arrays.asList("apple", "avocado"));
+        assertArrayEquals(new Object[] {"a"}, adapter.getSections());
+
+        sectionLength = 2;
+        adapter.refilter();
+
+        assertArrayEquals(new Object[] {"ap", "av"}, adapter.getSections());
+    }
+
+    @Test
+    public void insertedItemsAreNotTakenFromMemoizedSections() {
+        indexer.setMemoizeSections(true);
+        adapter.setComparable(true);
+        adapter.setIndexedStorage(true);
+        String apple = "apple";
+        adapter.addItems(Arrays.asList(apple, "avocado", "banana"));
+        assertArrayEquals(new Object[] {"a", "b"}, adapter.getSections());
+
+        sectionLength = 2;
+        adapter.removeItem(apple);
+        adapter.addItem(apple);
+
+        assertEquals("ap", adapter.getSections()[0]);
+    }
+}
@@ -0,0 +1,141 @@
+package com.shaubert.ui.adapters;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleIndexerTest {
+
+    private static final SimpleIndexer.SectionRetriever<String> FIRST_LETTER =
+            new SimpleIndexer.SectionRetriever<String>() {
+                @Override
+                public Object getSectionFrom(String item) {
+                    return item.substring(0, 1);
+                }
+            };
+
+    private final List<String> items = new ArrayList<>();
+    private SimpleIndexer<String> indexer;
+
+    @Before
+    public void setUp() {
+        indexer = newIndexer();
+    }
+
+    @Test
+    public void sectionsStartAtFirstItemOfEverySection() {
+        items.addAll(Arrays.asList("a1", "a2", "b1", "c1", "c2", "c3"));
+        indexer.refreshSections();
+
+        assertArrayEquals(new Object[] {"a", "b", "c"}, indexer.getSections());
+        assertEquals(0, indexer.getPositionForSection(0));
+        assertEquals(3, indexer.getPositionForSection(1));
+        assertEquals(5, indexer.getPositionForSection(2));
+        assertEquals(-1, indexer.getPositionForSection(3));
+        int[] expectedSections = {0, 0, 0, 1, 1, 2, 2, 2, 2};
+        for (int position = 0; position < expectedSections.length; position++) {
+            assertEquals(expectedSections[position], indexer.getSectionForPosition(position));
+            assertEquals(position == 0 || position == 3 || position == 5, indexer.isSectionStart(position));
+            assertEquals(position == 2 || position == 4 || position == 8, indexer.isSectionEnd(position));
+        }
+    }
+
+    @Test
+    public void headerBitsCoverManyWords() {
+        for (int i = 0; i < 200; i++) {
+            items.add(String.valueOf((char) ('A' + i)));
+        }
+        indexer.refreshSections();
+
+        for (int position = 0; position < items.size() * 2; position++) {
+            assertEquals(position % 2 == 0, indexer.isSectionStart(position));
+            assertEquals(position / 2, indexer.getSectionForPosition(position));
+        }
+        assertFalse(indexer.isSectionStart(-1));
+        assertFalse(indexer.isSectionStart(items.size() * 2 + 64));
+    }
+
+    @Test
+    public void itemsBeforeFirstSectionHaveNoSection() {
+        SimpleIndexer<String> indexer = new SimpleIndexer<>(new SimpleIndexer.SectionRetriever<String>() {
+            @Override
+            public Object getSectionFrom(String item) {
+                return item.startsWith("-") ? null : item.substring(0, 1);
+            }
+        }, adapter());
+        items.addAll(Arrays.asList("-1", "-2", "a1"));
+        indexer.refreshSections();
+
+        assertEquals(-1, indexer.getSectionForPosition(0));
+        assertEquals(0, indexer.getSectionForPosition(2));
+        assertTrue(indexer.isSectionStart(2));
+    }
+
+    @Test
+    public void changedSectionsAreTheSameAsRefreshedOnes() {
+        Random random = new Random(17);
+        for (int i = 0; i < 50; i++) {
+            items.add(randomItem(random));
+        }
+        indexer.refreshSections();
+
+        for (int step = 0; step < 300; step++) {
+            int changes = 1 + random.nextInt(3);
+            for (int i = 0; i < changes; i++) {
+                if (random.nextBoolean() || items.isEmpty()) {
+                    int position = random.nextInt(items.size() + 1);
+                    items.add(position, randomItem(random));
+                    indexer.onItemsInserted(position, 1);
+                } else {
+                    int position = random.nextInt(items.size());
+                    items.remove(position);
+                    indexer.onItemsRemoved(position, 1);
+                }
+            }
+            indexer.refreshChangedSections();
+
+            SimpleIndexer<String> expected = newIndexer();
+            expected.refreshSections();
+            assertArrayEquals(expected.getSections(), indexer.getSections());
+            for (int section = 0; section < expected.getSections().length; section++) {
+                assertEquals(expected.getPositionForSection(section), indexer.getPositionForSection(section));
+            }
+        }
+    }
+
+    private SimpleIndexer<String> newIndexer() {
+        return new SimpleIndexer<>(FIRST_LETTER, adapter());
+    }
+
+    private SimpleIndexer.ItemsAdapter<String> adapter() {
+        return new SimpleIndexer.ItemsAdapter<String>() {
+            @Override
+            public List<String> getItemsWithoutSections() {
+                return items;
+            }
+
+            @Override
+            public int getCount() {
+                return items.size() + indexer.getSections().length;
+            }
+
+            @Override
+            public boolean isShowSectionForEmptyList() {
+                return false;
+            }
+        };
+    }
+
+    private static String randomItem(Random random) {
+        return (char) ('a' + random.nextInt(4)) + String.valueOf(random.nextInt(100));
+    }
+}
@@ -0,0 +1,111 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DynamicBitVectorTest {
+
+    @Test
+    public void resetSetsAllBits() {
+        DynamicBitVector vector = new DynamicBitVector();
+        vector.reset(DynamicBitVector.CHUNK_BITS + 5, true);
+
+        assertEquals(DynamicBitVector.CHUNK_BITS + 5, vector.cardinality());
+        assertEquals(DynamicBitVector.CHUNK_BITS + 4, vector.select(DynamicBitVector.CHUNK_BITS + 4));
+        assertEquals(DynamicBitVector.CHUNK_BITS, vector.rank(DynamicBitVector.CHUNK_BITS));
+    }
+
+    @Test
+    public void setBitsIgnoresBitsAfterSize() {
+        DynamicBitVector vector = new DynamicBitVector();
+        vector.setBits(new long[] {-1L}, 10);
+
+        assertEquals(10, vector.size());
+        assertEquals(10, vector.cardinality());
+        assertEquals(1, vector.toBits().length);
+        assertEquals(0x3FFL, vector.toBits()[0]);
+    }
+
+    @Test
+    public void insertAndRemoveAtChunkBoundaries() {
+        DynamicBitVector vector = new DynamicBitVector();
+        vector.reset(DynamicBitVector.CHUNK_BITS * 2, false);
+
+        vector.insert(DynamicBitVector.CHUNK_BITS, true);
+        vector.insert(0, true);
+        vector.insert(vector.size(), true);
+
+        assertEquals(3, vector.cardinality());
+        assertEquals(0, vector.select(0));
+        assertEquals(DynamicBitVector.CHUNK_BITS + 1, vector.select(1));
+        assertEquals(vector.size() - 1, vector.select(2));
+        assertTrue(vector.remove(DynamicBitVector.CHUNK_BITS + 1));
+        assertFalse(vector.remove(1));
+        assertEquals(1, vector.rank(vector.size() - 1));
+        assertTrue(vector.remove(0));
+        assertEquals(0, vector.rank(vector.size() - 1));
+    }
+
+    @Test
+    public void matchesListOfBooleans() {
+        Random random = new Random(7);
+        DynamicBitVector vector = new DynamicBitVector();
+        List<Boolean> model = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            boolean value = random.nextBoolean();
+            model.add(value);
+        }
+        long[] bits = new long[(model.size() + 63) >>> 6];
+        for (int i = 0; i < model.size(); i++) {
+            if (model.get(i)) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        vector.setBits(bits, model.size());
+
+        for (int step = 0; step < 20000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || model.isEmpty()) {
+                int index = random.nextInt(model.size() + 1);
+                boolean value = random.nextBoolean();
+                vector.insert(index, value);
+                model.add(index, value);
+            } else if (operation < 8) {
+                int index = random.nextInt(model.size());
+                assertEquals(model.remove(index), vector.remove(index));
+            } else {
+                int index = random.nextInt(model.size());
+                boolean value = random.nextBoolean();
+                vector.set(index, value);
+                model.set(index, value);
+            }
+            if (step % 500 == 0) {
+                assertSameBits(model, vector);
+            }
+        }
+        assertSameBits(model, vector);
+    }
+
+    private static void assertSameBits(List<Boolean> model, DynamicBitVector vector) {
+        assertEquals(model.size(), vector.size());
+        long[] bits = vector.toBits();
+        int rank = 0;
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(model.get(i), vector.get(i));
+            assertEquals(model.get(i), (bits[i >>> 6] & (1L << i)) != 0);
+            assertEquals(rank, vector.rank(i));
+            if (model.get(i)) {
+                assertEquals(i, vector.select(rank));
+                rank++;
+            }
+        }
+        assertEquals(rank, vector.cardinality());
+    }
+}
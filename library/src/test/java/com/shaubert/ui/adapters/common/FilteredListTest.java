@@ -0,0 +1,168 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilteredListTest {
+
+    private final List<Integer> source = new ArrayList<>();
+    private final List<Boolean> visible = new ArrayList<>();
+    private final FilteredList<Integer> list = new FilteredList<>(source);
+    private int nextItem;
+
+    @Test
+    public void staysPassthroughWhileInsertedItemsAreVisible() {
+        insert(0, true);
+        insert(0, true);
+        list.onSourceInserted(new int[] {1, 3}, null, null);
+        source.add(1, nextItem++);
+        source.add(3, nextItem++);
+
+        assertTrue(list.isPassthrough());
+        assertEquals(source, list);
+    }
+
+    @Test
+    public void hiddenItemEndsPassthrough() {
+        insert(0, true);
+        insert(1, true);
+        insert(1, false);
+
+        assertFalse(list.isPassthrough());
+        assertEquals(Arrays.asList(source.get(0), source.get(2)), list);
+        assertEquals(-1, list.getPosition(1));
+        assertEquals(1, list.getPosition(2));
+    }
+
+    @Test
+    public void allSetSourceBitsArePassedThrough() {
+        insert(0, true);
+        insert(1, true);
+
+        list.setSourceBits(new long[] {3L});
+
+        assertTrue(list.isPassthrough());
+    }
+
+    @Test
+    public void removedRangesArePositionsBeforeRemoval() {
+        for (int i = 0; i < 6; i++) {
+            insert(i, i != 2);
+        }
+        IntArrayList ranges = new IntArrayList();
+
+        list.onSourceRemoved(new boolean[] {false, true, true, true, false, true}, ranges);
+        source.subList(1, 4).clear();
+        source.remove(2);
+
+        assertArrayEquals(new int[] {1, 2, 4, 1}, ranges.toArray());
+        assertEquals(source, list);
+    }
+
+    @Test
+    public void matchesModelAfterRandomChanges() {
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            insert(source.size(), random.nextInt(3) > 0);
+        }
+
+        for (int step = 0; step < 3000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 4 || source.isEmpty()) {
+                insert(random.nextInt(source.size() + 1), random.nextBoolean());
+            } else if (operation < 8) {
+                int index = random.nextInt(source.size());
+                int position = expectedPosition(index);
+                source.remove(index);
+                visible.remove(index);
+                assertEquals(position, list.onSourceRemoved(index));
+            } else if (operation < 9) {
+                insertBatch(random);
+            } else {
+                removeBatch(random);
+            }
+            if (step % 100 == 0) {
+                assertModel();
+            }
+        }
+        assertModel();
+    }
+
+    private void insert(int index, boolean itemVisible) {
+        source.add(index, nextItem++);
+        visible.add(index, itemVisible);
+        int position = list.onSourceInserted(index, itemVisible);
+        assertEquals(expectedPosition(index), position);
+    }
+
+    private void insertBatch(Random random) {
+        int count = 1 + random.nextInt(5);
+        int[] indices = new int[count];
+        boolean[] flags = new boolean[count];
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            index += random.nextInt(Math.max(1, source.size() / count));
+            indices[i] = index;
+            flags[i] = random.nextBoolean();
+            source.add(index, nextItem++);
+            visible.add(index, flags[i]);
+            index++;
+        }
+        IntArrayList positions = new IntArrayList();
+        list.onSourceInserted(indices, flags, positions);
+        IntArrayList expected = new IntArrayList();
+        for (int i = 0; i < count; i++) {
+            if (flags[i]) {
+                expected.add(expectedPosition(indices[i]));
+            }
+        }
+        assertArrayEquals(expected.toArray(), positions.toArray());
+    }
+
+    private void removeBatch(Random random) {
+        boolean[] removed = new boolean[source.size()];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = random.nextInt(50) == 0;
+        }
+        list.onSourceRemoved(removed, null);
+        for (int i = removed.length - 1; i >= 0; i--) {
+            if (removed[i]) {
+                source.remove(i);
+                visible.remove(i);
+            }
+        }
+    }
+
+    private int expectedPosition(int index) {
+        if (!visible.get(index)) {
+            return -1;
+        }
+        int position = 0;
+        for (int i = 0; i < index; i++) {
+            if (visible.get(i)) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private void assertModel() {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < source.size(); i++) {
+            if (visible.get(i)) {
+                expected.add(source.get(i));
+            }
+            assertEquals(expectedPosition(i), list.getPosition(i));
+        }
+        assertEquals(expected, new ArrayList<>(list));
+    }
+}
@@ -0,0 +1,63 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RankTreeTest {
+
+    @Test
+    public void handlesKeepPositionsOfListElements() {
+        Random random = new Random(11);
+        RankTree tree = new RankTree();
+        List<Integer> model = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            if (random.nextInt(3) > 0 || model.isEmpty()) {
+                int position = random.nextInt(model.size() + 1);
+                model.add(position, tree.insert(position));
+            } else {
+                int position = random.nextInt(model.size());
+                assertEquals(model.remove(position).intValue(), tree.remove(position));
+            }
+            if (step % 250 == 0) {
+                assertPositions(model, tree);
+            }
+        }
+        assertPositions(model, tree);
+    }
+
+    @Test
+    public void removedHandleHasNoPosition() {
+        RankTree tree = new RankTree();
+        int first = tree.insert(0);
+        int second = tree.insert(1);
+
+        tree.remove(0);
+
+        assertEquals(-1, tree.getPosition(first));
+        assertEquals(0, tree.getPosition(second));
+    }
+
+    @Test
+    public void clearDropsHandles() {
+        RankTree tree = new RankTree();
+        int handle = tree.insert(0);
+        tree.insert(0);
+
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.getPosition(handle));
+    }
+
+    private static void assertPositions(List<Integer> model, RankTree tree) {
+        assertEquals(model.size(), tree.size());
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(i, tree.getPosition(model.get(i)));
+        }
+    }
+}
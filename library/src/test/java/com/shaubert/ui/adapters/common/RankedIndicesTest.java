@@ -0,0 +1,75 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RankedIndicesTest {
+
+    @Test
+    public void indicesAreSortedByScoreThenBySourceOrder() {
+        RankedIndices indices = new RankedIndices(0, 0);
+        indices.add(0, 40);
+        indices.add(1, 100);
+        indices.add(2, 40);
+        indices.add(3, 80);
+
+        assertEquals(4, indices.size());
+        assertArrayEquals(new int[] {1, 3, 0, 2}, indices.toSortedIndices());
+        assertArrayEquals(new int[0], indices.getTop());
+    }
+
+    @Test
+    public void topHasBestIndicesAddedSoFar() {
+        RankedIndices indices = new RankedIndices(0, 2);
+        indices.add(0, 10);
+        assertArrayEquals(new int[] {0}, indices.getTop());
+
+        indices.add(1, 30);
+        indices.add(2, 20);
+        assertArrayEquals(new int[] {1, 2}, indices.getTop());
+
+        indices.add(3, 30);
+        indices.add(4, 5);
+        assertArrayEquals(new int[] {1, 3}, indices.getTop());
+    }
+
+    @Test
+    public void topIsPrefixOfSortedIndices() {
+        Random random = new Random(18);
+        for (int step = 0; step < 100; step++) {
+            int topCount = random.nextInt(10);
+            RankedIndices indices = new RankedIndices(0, topCount);
+            final List<int[]> added = new ArrayList<>();
+            int count = random.nextInt(100);
+            for (int i = 0; i < count; i++) {
+                int score = 1 + random.nextInt(5);
+                indices.add(i, score);
+                added.add(new int[] {i, score});
+            }
+            Collections.sort(added, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] left, int[] right) {
+                    return left[1] != right[1] ? right[1] - left[1] : left[0] - right[0];
+                }
+            });
+
+            int[] top = indices.getTop();
+            assertEquals(Math.min(topCount, count), top.length);
+            for (int i = 0; i < top.length; i++) {
+                assertEquals(added.get(i)[0], top[i]);
+            }
+            int[] sorted = indices.toSortedIndices();
+            for (int i = 0; i < sorted.length; i++) {
+                assertEquals(added.get(i)[0], sorted[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.shaubert.ui.adapters.common;
+
+import android.widget.SectionIndexer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SectionPositionsTest {
+
+    /**
+     * Rows: header a, 2 items, header b, 1 item, header c, 3 items.
+     */
+    private static final int[] HEADERS = {0, 3, 5};
+    private static final int ROWS_COUNT = 9;
+
+    @Test
+    public void mapsItemPositionsToAdapterPositionsAndBack() {
+        SectionPositions positions = positions(HEADERS);
+
+        int itemPosition = 0;
+        for (int position = 0; position < ROWS_COUNT; position++) {
+            if (isHeader(HEADERS, position)) {
+                continue;
+            }
+            assertEquals(itemPosition, positions.toItemPosition(position));
+            assertEquals(position, positions.toAdapterPosition(itemPosition));
+            itemPosition++;
+        }
+        assertEquals(-1, positions.toAdapterPosition(-1));
+    }
+
+    @Test
+    public void countsHeadersBeforePositions() {
+        SectionPositions positions = positions(HEADERS);
+
+        int[] headersAtOrBefore = {1, 1, 1, 2, 2, 3, 3, 3, 3};
+        for (int position = 0; position < ROWS_COUNT; position++) {
+            assertEquals(headersAtOrBefore[position], positions.getSectionsCountBefore(position));
+        }
+        int[] headersBeforeItem = {1, 1, 2, 3, 3, 3};
+        for (int item = 0; item < headersBeforeItem.length; item++) {
+            assertEquals(headersBeforeItem[item], positions.getSectionsCountBeforeItem(item + 1));
+        }
+        assertEquals(0, positions.getSectionsCountBeforeItem(0));
+        assertEquals(0, positions.getItemStart(0));
+        assertEquals(2, positions.getItemStart(1));
+        assertEquals(3, positions.getItemStart(2));
+    }
+
+    @Test
+    public void tableIsBuiltForSectionsArray() {
+        SectionPositions positions = new SectionPositions();
+        Indexer indexer = new Indexer(HEADERS);
+        positions.update(indexer);
+
+        assertTrue(positions.isBuiltFor(indexer.sections));
+        assertFalse(positions.isBuiltFor(new Object[3]));
+        assertEquals("b", positions.getSection(1));
+
+        SectionPositions copy = positions.copy();
+        positions.invalidate();
+        assertEquals(0, positions.getSectionsCount());
+        assertEquals(3, copy.getSectionsCount());
+        assertTrue(copy.isBuiltFor(indexer.sections));
+    }
+
+    @Test
+    public void emptyTableKeepsPositions() {
+        SectionPositions positions = new SectionPositions();
+
+        assertEquals(5, positions.toAdapterPosition(5));
+        assertEquals(5, positions.toItemPosition(5));
+        assertEquals(0, positions.getSectionsCountBefore(5));
+    }
+
+    private static boolean isHeader(int[] headers, int position) {
+        for (int header : headers) {
+            if (header == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SectionPositions positions(int[] headers) {
+        SectionPositions positions = new SectionPositions();
+        positions.update(new Indexer(headers));
+        return positions;
+    }
+
+    private static class Indexer implements SectionIndexer {
+        final Object[] sections;
+        final int[] headers;
+
+        Indexer(int[] headers) {
+            this.headers = headers;
+            sections = new Object[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                sections[i] = String.valueOf((char) ('a' + i));
+            }
+        }
+
+        @Override
+        public Object[] getSections() {
+            return sections;
+        }
+
+        @Override
+        public int getPositionForSection(int section) {
+            return headers[section];
+        }
+
+        @Override
+        public int getSectionForPosition(int position) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
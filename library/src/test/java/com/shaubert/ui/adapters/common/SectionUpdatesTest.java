@@ -0,0 +1,258 @@
+package com.shaubert.ui.adapters.common;
+
+import android.widget.SectionIndexer;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SectionUpdatesTest {
+
+    @Test
+    public void insertIntoSectionKeepsHeaders() {
+        Rows rows = dispatch(items("a/1", "a/3", "b/1"), items("a/1", "a/2", "a/3", "b/1"),
+                insert(1, 1));
+
+        assertEquals(1, rows.inserted);
+        assertEquals(0, rows.removed);
+    }
+
+    @Test
+    public void insertIntoNewSectionInsertsHeader() {
+        Rows rows = dispatch(items("a/1", "c/1"), items("a/1", "b/1", "c/1"),
+                insert(1, 1));
+
+        assertEquals(2, rows.inserted);
+        assertEquals(0, rows.removed);
+    }
+
+    @Test
+    public void removeOfLastSectionItemRemovesHeader() {
+        Rows rows = dispatch(items("a/1", "b/1", "c/1"), items("a/1", "c/1"),
+                remove(1, 1));
+
+        assertEquals(0, rows.inserted);
+        assertEquals(2, rows.removed);
+    }
+
+    @Test
+    public void removeAcrossSectionBoundary() {
+        Rows rows = dispatch(items("a/1", "a/2", "b/1", "b/2", "c/1"), items("a/1", "b/2", "c/1"),
+                remove(1, 2));
+
+        assertEquals(0, rows.inserted);
+        assertEquals(2, rows.removed);
+    }
+
+    @Test
+    public void moveToOtherSection() {
+        Rows rows = dispatch(items("a/1", "b/1", "c/1"), items("b/1", "c/1", "d/1"),
+                move(0, 2), change(2));
+
+        assertEquals(2, rows.inserted);
+        assertEquals(2, rows.removed);
+    }
+
+    @Test
+    public void moveInsideSectionKeepsHeaders() {
+        Rows rows = dispatch(items("a/1", "a/2", "a/3", "b/1"), items("a/2", "a/3", "a/1", "b/1"),
+                move(0, 2));
+
+        assertEquals(1, rows.inserted);
+        assertEquals(1, rows.removed);
+    }
+
+    @Test
+    public void headersAreMatchedInReplacedRange() {
+        int count = 200;
+        Rows rows = dispatch(sectionPerItem("old", count), sectionPerItem("new", count),
+                remove(0, count), insert(0, count));
+
+        assertEquals(count, rows.removed);
+        assertEquals(count, rows.inserted);
+    }
+
+    @Test
+    public void headersAreReplacedWhenRangeIsTooLargeToMatch() {
+        int count = 300;
+        Rows rows = dispatch(sectionPerItem("old", count), sectionPerItem("new", count),
+                remove(0, count), insert(0, count));
+
+        assertEquals(count * 2, rows.removed);
+        assertEquals(count * 2, rows.inserted);
+    }
+
+    private interface Update {
+        void applyTo(SectionUpdates updates);
+    }
+
+    private static Update insert(final int position, final int count) {
+        return new Update() {
+            @Override
+            public void applyTo(SectionUpdates updates) {
+                updates.onInserted(position, count);
+            }
+        };
+    }
+
+    private static Update remove(final int position, final int count) {
+        return new Update() {
+            @Override
+            public void applyTo(SectionUpdates updates) {
+                updates.onRemoved(position, count);
+            }
+        };
+    }
+
+    private static Update move(final int from, final int to) {
+        return new Update() {
+            @Override
+            public void applyTo(SectionUpdates updates) {
+                updates.onMoved(from, to);
+            }
+        };
+    }
+
+    private static Update change(final int position) {
+        return new Update() {
+            @Override
+            public void applyTo(SectionUpdates updates) {
+                updates.onChanged(position, 1, null);
+            }
+        };
+    }
+
+    private static List<String> items(String... items) {
+        return Arrays.asList(items);
+    }
+
+    /**
+     * @return items named "section/name" with a different section for every item.
+     */
+    private static List<String> sectionPerItem(String prefix, int count) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(String.format("%05d/%s", i, prefix));
+        }
+        return items;
+    }
+
+    /**
+     * Applies updates to rows of oldItems and checks that every row that wasn't inserted or changed
+     * is the same as row of newItems at its position.
+     */
+    private static Rows dispatch(List<String> oldItems, List<String> newItems, Update... updates) {
+        SectionUpdates sectionUpdates = new SectionUpdates();
+        for (Update update : updates) {
+            update.applyTo(sectionUpdates);
+        }
+        Rows rows = new Rows(toRows(oldItems));
+        sectionUpdates.dispatchTo(positions(oldItems), positions(newItems), newItems.size(), rows);
+
+        List<String> expected = toRows(newItems);
+        assertEquals(expected.size(), rows.labels.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String label = rows.labels.get(i);
+            if (label != null) {
+                assertEquals(expected.get(i), label);
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> toRows(List<String> items) {
+        List<String> rows = new ArrayList<>();
+        String section = null;
+        for (String item : items) {
+            String itemSection = section(item);
+            if (!itemSection.equals(section)) {
+                rows.add("#" + itemSection);
+                section = itemSection;
+            }
+            rows.add(item);
+        }
+        return rows;
+    }
+
+    private static SectionPositions positions(List<String> items) {
+        final List<Object> sections = new ArrayList<>();
+        final IntArrayList headerPositions = new IntArrayList();
+        String section = null;
+        for (int i = 0; i < items.size(); i++) {
+            String itemSection = section(items.get(i));
+            if (!itemSection.equals(section)) {
+                headerPositions.add(i + sections.size());
+                sections.add(itemSection);
+                section = itemSection;
+            }
+        }
+        SectionPositions positions = new SectionPositions();
+        positions.update(new SectionIndexer() {
+            final Object[] array = sections.toArray();
+
+            @Override
+            public Object[] getSections() {
+                return array;
+            }
+
+            @Override
+            public int getPositionForSection(int section) {
+                return headerPositions.get(section);
+            }
+
+            @Override
+            public int getSectionForPosition(int position) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        return positions;
+    }
+
+    private static String section(String item) {
+        return item.substring(0, item.indexOf('/'));
+    }
+
+    /**
+     * Old rows with updates applied, inserted and changed rows have null labels.
+     */
+    private static class Rows implements ListUpdateCallback {
+        final List<String> labels;
+        int inserted;
+        int removed;
+
+        Rows(List<String> labels) {
+            this.labels = new ArrayList<>(labels);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            labels.addAll(position, Collections.<String>nCopies(count, null));
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            labels.subList(position, position + count).clear();
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            for (int i = position; i < position + count; i++) {
+                labels.set(i, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SortedTreeListTest {
+
+    private static final Comparator<Integer> ORDER = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer lhs, Integer rhs) {
+            return lhs.compareTo(rhs);
+        }
+    };
+
+    private static SortedTreeList<Integer> list(Integer... items) {
+        return new SortedTreeList<>(ORDER, Arrays.asList(items));
+    }
+
+    @Test
+    public void setOutOfOrderBeforeNextItemMarksListUnsorted() {
+        SortedTreeList<Integer> list = list(1, 2, 3, 4);
+
+        list.set(0, 10);
+
+        assertFalse(list.isSorted());
+        assertEquals(0, list.indexOf(10));
+        assertTrue(list.remove((Object) 10));
+        assertEquals(Arrays.asList(2, 3, 4), list);
+    }
+
+    @Test
+    public void setOutOfOrderAfterPreviousItemMarksListUnsorted() {
+        SortedTreeList<Integer> list = list(1, 2, 3, 4);
+
+        list.set(3, 0);
+
+        assertFalse(list.isSorted());
+        assertEquals(3, list.indexOf(0));
+    }
+
+    @Test
+    public void setInOrderKeepsListSorted() {
+        SortedTreeList<Integer> list = list(1, 2, 4, 5);
+
+        list.set(2, 3);
+        list.set(0, 0);
+        list.set(3, 9);
+
+        assertTrue(list.isSorted());
+        assertEquals(Arrays.asList(0, 2, 3, 9), list);
+        assertEquals(2, list.indexOf(3));
+    }
+
+    @Test
+    public void addChecksInsertPosition() {
+        SortedTreeList<Integer> list = list(1, 3, 5);
+
+        list.add(1, 2);
+        assertTrue(list.isSorted());
+
+        list.add(0, 4);
+        assertFalse(list.isSorted());
+    }
+
+    @Test
+    public void addSortedKeepsOrder() {
+        SortedTreeList<Integer> list = list();
+        for (int item : new int[] {5, 1, 4, 1, 3}) {
+            list.addSorted(item);
+        }
+
+        assertTrue(list.isSorted());
+        assertEquals(Arrays.asList(1, 1, 3, 4, 5), list);
+    }
+
+    @Test
+    public void iteratorRemovesItemsInPlace() {
+        SortedTreeList<Integer> list = list(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+        Iterator<Integer> iterator = list.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 3 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Arrays.asList(1, 2, 4, 5, 7, 8), list);
+        assertTrue(list.isSorted());
+        assertEquals(2, list.indexOf(4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void iteratorRemoveTwiceFails() {
+        Iterator<Integer> iterator = list(1, 2).iterator();
+        iterator.next();
+        iterator.remove();
+        iterator.remove();
+    }
+}
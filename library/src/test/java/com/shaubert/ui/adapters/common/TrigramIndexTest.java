@@ -0,0 +1,43 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TrigramIndexTest {
+
+    private final TokenArena arena = new TokenArena();
+    private final TrigramIndex index = new TrigramIndex();
+
+    @Test
+    public void findsItemsWithEveryTrigramOfWord() {
+        String[] items = {"black cat", "catalog", "dog", "cart"};
+        for (int i = 0; i < items.length; i++) {
+            index.add(i, tokens(items[i]));
+        }
+
+        assertArrayEquals(new int[] {0, 1}, index.findCandidates("cat"));
+        assertArrayEquals(new int[] {3}, index.findCandidates("cart"));
+        assertArrayEquals(new int[0], index.findCandidates("cow"));
+    }
+
+    @Test
+    public void replacedItemKeepsPostingsSorted() {
+        String[] items = {"cat", "dog", "cat", "dog"};
+        for (int i = 0; i < items.length; i++) {
+            index.add(i, tokens(items[i]));
+        }
+
+        index.remove(1, tokens("dog"));
+        index.insert(1, tokens("cat cat"));
+
+        assertArrayEquals(new int[] {0, 1, 2}, index.findCandidates("cat"));
+        assertArrayEquals(new int[] {3}, index.findCandidates("dog"));
+    }
+
+    private TokenArena.Tokens tokens(String text) {
+        TokenArena.Tokens tokens = new TokenArena.Tokens();
+        arena.put(new Object(), text, tokens);
+        return tokens;
+    }
+}
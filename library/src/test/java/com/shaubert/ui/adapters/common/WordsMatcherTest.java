@@ -0,0 +1,133 @@
+package com.shaubert.ui.adapters.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WordsMatcherTest {
+
+    private final TokenArena arena = new TokenArena();
+
+    @Test
+    public void everyWordOfVariantShouldBeInSomeToken() {
+        WordsMatcher matcher = new WordsMatcher(new String[][] {{"red", "cat"}});
+
+        assertTrue(matches(matcher, "big red cat"));
+        assertTrue(matches(matcher, "redcat"));
+        assertFalse(matches(matcher, "red dog"));
+        assertFalse(matches(matcher, "re dcat"));
+    }
+
+    @Test
+    public void overlappingWordsAreFoundWithFailureLinks() {
+        WordsMatcher matcher = new WordsMatcher(new String[][] {{"he", "she", "hers"}});
+
+        assertTrue(matches(matcher, "ushers"));
+        assertFalse(matches(matcher, "usher"));
+    }
+
+    @Test
+    public void anyVariantCanMatch() {
+        WordsMatcher matcher = new WordsMatcher(new String[][] {{"cat"}, {"dog", "red"}});
+
+        assertTrue(matches(matcher, "cat"));
+        assertTrue(matches(matcher, "red dog"));
+        assertFalse(matches(matcher, "dog"));
+    }
+
+    @Test
+    public void emptyVariantMatchesItemWithTokens() {
+        WordsMatcher matcher = new WordsMatcher(new String[][] {{}});
+
+        assertTrue(matches(matcher, "anything"));
+        assertFalse(matcher.matches(new String[0]));
+    }
+
+    @Test
+    public void nonAsciiCharsAreMatched() {
+        WordsMatcher matcher = new WordsMatcher(new String[][] {{"\u00e9t\u00e9"}});
+
+        assertTrue(matches(matcher, "l\u00e9t\u00e9"));
+        assertFalse(matches(matcher, "ete"));
+    }
+
+    @Test
+    public void moreThanSixtyFourWordsAreMatched() {
+        String[] words = new String[70];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i + "x";
+            text.append(words[i]).append(' ');
+        }
+        WordsMatcher matcher = new WordsMatcher(new String[][] {words});
+
+        assertTrue(matches(matcher, text.toString()));
+        assertFalse(matches(matcher, text.toString().replace("w69x", "")));
+    }
+
+    @Test
+    public void matchesLikeNaiveSearch() {
+        Random random = new Random(13);
+        for (int step = 0; step < 500; step++) {
+            String[][] variants = new String[1 + random.nextInt(3)][];
+            for (int v = 0; v < variants.length; v++) {
+                variants[v] = new String[1 + random.nextInt(3)];
+                for (int w = 0; w < variants[v].length; w++) {
+                    variants[v][w] = randomWord(random, 1 + random.nextInt(3));
+                }
+            }
+            String[] tokens = new String[1 + random.nextInt(3)];
+            for (int t = 0; t < tokens.length; t++) {
+                tokens[t] = randomWord(random, 1 + random.nextInt(6));
+            }
+            WordsMatcher matcher = new WordsMatcher(variants);
+
+            boolean expected = naiveMatches(variants, tokens);
+            assertEquals(expected, matcher.matches(tokens));
+            assertEquals(expected, matches(matcher, join(tokens)));
+        }
+    }
+
+    private boolean matches(WordsMatcher matcher, String text) {
+        TokenArena.Tokens tokens = new TokenArena.Tokens();
+        arena.put(new Object(), text, tokens);
+        return matcher.matches(tokens);
+    }
+
+    private static boolean naiveMatches(String[][] variants, String[] tokens) {
+        for (String[] words : variants) {
+            boolean allFound = true;
+            for (String word : words) {
+                boolean found = false;
+                for (String token : tokens) {
+                    found |= token.contains(word);
+                }
+                allFound &= found;
+            }
+            if (allFound) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(2)));
+        }
+        return word.toString();
+    }
+
+    private static String join(String[] tokens) {
+        StringBuilder text = new StringBuilder();
+        for (String token : tokens) {
+            text.append(token).append(' ');
+        }
+        return text.toString();
+    }
+}